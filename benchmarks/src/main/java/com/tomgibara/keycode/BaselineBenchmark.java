@@ -0,0 +1,64 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes the same keys as {@link FormatBenchmark} using hex and
+ * Base64 so that keycode costs can be judged against common codecs.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BaselineBenchmark {
+
+	@Benchmark
+	public String encodeHex(KeyData data) {
+		return KeyData.toHex(data.keys[data.next()]);
+	}
+
+	@Benchmark
+	public byte[] decodeHex(KeyData data) {
+		return KeyData.fromHex(data.hexCodes[data.next()]);
+	}
+
+	@Benchmark
+	public String encodeBase64(KeyData data) {
+		return Base64.getEncoder().encodeToString(data.keys[data.next()]);
+	}
+
+	@Benchmark
+	public byte[] decodeBase64(KeyData data) {
+		return Base64.getDecoder().decode(data.base64Codes[data.next()]);
+	}
+
+}
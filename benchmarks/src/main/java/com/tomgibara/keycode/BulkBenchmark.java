@@ -0,0 +1,135 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Compares decoding many keycodes one at a time with decoding them through a
+ * {@link KeycodeBatch}. The forked JVM adds the incubating vector module so
+ * that, on Java 17 and later, {@link KeycodeBatch#decode(char[], int)} uses
+ * its vectorized implementation while {@link KeycodeBatch#decode(CharSequence)}
+ * remains scalar. Scores are per batch of {@code KeyData.COUNT} keycodes.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class BulkBenchmark {
+
+	private final byte[] key = new byte[32];
+	private final KeycodeBatch batch = Format.plain().batch(KeyData.COUNT);
+	private char[] chars;
+	private String codes;
+	private String standardCodes;
+	private final Writer sink = new Writer() {
+		@Override public void write(char[] cbuf, int off, int len) { }
+		@Override public void flush() { }
+		@Override public void close() { }
+	};
+
+	@Setup
+	public void setup(KeyData data) {
+		StringBuilder sb = new StringBuilder();
+		for (String code : data.plainCodes) {
+			sb.append(code);
+		}
+		codes = sb.toString();
+		chars = codes.toCharArray();
+		sb.setLength(0);
+		for (String code : data.standardCodes) {
+			sb.append(code).append("\n\n");
+		}
+		standardCodes = sb.toString();
+	}
+
+	@Benchmark
+	public int tryParseEach(KeyData data) {
+		int count = 0;
+		for (String code : data.plainCodes) {
+			if (Format.plain().tryParse(code, key) >= 0) count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int decodeScalar() {
+		return batch.decode(CharBuffer.wrap(chars));
+	}
+
+	@Benchmark
+	public int decodeBulk() {
+		return batch.decode(chars, 0);
+	}
+
+	@Benchmark
+	public ParsedKeycodes parseAll() {
+		return Format.plain().parseAll(codes);
+	}
+
+	// reads whole text and splits it before parsing each code
+	@Benchmark
+	public int splitAndParse() {
+		int count = 0;
+		for (String code : standardCodes.split("\n\n")) {
+			Format.standard().parse(code);
+			count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int readStream() throws IOException {
+		KeycodeReader reader = Format.standard().reader(new StringReader(standardCodes));
+		byte[] key = new byte[32];
+		int count = 0;
+		while (reader.readKey(key, 0) >= 0) count++;
+		return count;
+	}
+
+	@Benchmark
+	public void writeStream(KeyData data) throws IOException {
+		KeycodeWriter writer = Format.standard().writer(sink);
+		for (int i = 0; i < KeyData.COUNT; i++) {
+			writer.writeKey(data.keys[i], 0, data.tags[i]);
+		}
+		writer.flush();
+	}
+
+}
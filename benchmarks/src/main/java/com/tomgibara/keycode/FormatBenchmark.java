@@ -0,0 +1,206 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Measures the public encoding and parsing entry points of
+ * {@link Keycode.Format}.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+	private final char[] chars = new char[Format.standard().getCodeLength()];
+	private final byte[] key = new byte[32];
+	// headroom, since each stripe of the cache evicts independently
+	private final KeycodeCache cache = Format.standard().cached(KeyData.COUNT * 2);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(Format.standard().getCodeLength());
+	private final Set<Keycode> set = new HashSet<>();
+	private final KeycodeParser parser = Format.standard().parser();
+
+	@Setup
+	public void setup(KeyData data) {
+		set.addAll(Arrays.asList(data.keycodes));
+	}
+
+	@Benchmark
+	public Keycode keycode(KeyData data) {
+		return Format.plain().keycode(data.keys[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode keycodeTagged(KeyData data) {
+		int i = data.next();
+		return Format.plain().keycode(data.keys[i], data.tags[i]);
+	}
+
+	// revalidates the entered text on every keystroke
+	@Benchmark
+	public int typeValidate(KeyData data) {
+		String code = data.standardCodes[data.next()];
+		int result = 0;
+		for (int i = 1; i <= code.length(); i++) {
+			result = Format.standard().validate(code.subSequence(0, i));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int typeParser(KeyData data) {
+		String code = data.standardCodes[data.next()];
+		parser.reset();
+		int result = 0;
+		for (int i = 0; i < code.length(); i++) {
+			result = parser.accept(code.charAt(i));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public String lastRow(KeyData data) {
+		int i = data.next();
+		return Format.standard().lastRow(data.keys[i], data.tags[i]);
+	}
+
+	@Benchmark
+	public int keycodeHash(KeyData data) {
+		return data.keycodes[data.next()].hashCode();
+	}
+
+	// keycodes as map keys: construct, hash and compare without encoding
+	@Benchmark
+	public boolean keycodeLookup(KeyData data) {
+		int i = data.next();
+		return set.contains(Format.plain().keycode(data.keys[i], data.tags[i]));
+	}
+
+	@Benchmark
+	public char[] encodeTo(KeyData data) {
+		int i = data.next();
+		Format.standard().encodeTo(data.keys[i], 0, data.tags[i], chars, 0);
+		return chars;
+	}
+
+	@Benchmark
+	public Keycode parsePlain(KeyData data) {
+		return Format.plain().parse(data.plainCodes[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode parseStandard(KeyData data) {
+		return Format.standard().parse(data.standardCodes[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode parseCustom(KeyData data) {
+		return KeyData.CUSTOM.parse(data.customCodes[data.next()]);
+	}
+
+	@Benchmark
+	public int tryParsePlain(KeyData data) {
+		return Format.plain().tryParse(data.plainCodes[data.next()], key);
+	}
+
+	@Benchmark
+	public Object parseInvalid(KeyData data) {
+		try {
+			return Format.plain().parse(data.invalidCodes[data.next()]);
+		} catch (IllegalArgumentException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	public int tryParseInvalid(KeyData data) {
+		return Format.plain().tryParse(data.invalidCodes[data.next()], key);
+	}
+
+	@Benchmark
+	public Keycode parseStandardBytes(KeyData data) {
+		byte[] bytes = data.standardBytes[data.next()];
+		return Format.standard().parse(bytes, 0, bytes.length);
+	}
+
+	@Benchmark
+	public Keycode parseStandardDecoded(KeyData data) {
+		// the approach that byte parsing replaces
+		return Format.standard().parse(new String(data.standardBytes[data.next()], StandardCharsets.US_ASCII));
+	}
+
+	@Benchmark
+	public ByteBuffer writeTo(KeyData data) {
+		buffer.clear();
+		data.keycodes[data.next()].writeTo(buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public List<Correction> suggestCorrections(KeyData data) {
+		return Format.plain().suggestCorrections(data.invalidCodes[data.next()]);
+	}
+
+	@Benchmark
+	public List<Keycode> recover(KeyData data) {
+		// one unknown in each row, two in the first
+		char[] pattern = data.plainCodes[data.next()].toCharArray();
+		for (int i = 4; i < 63; i += 9) {
+			pattern[i] = '?';
+		}
+		pattern[0] = '?';
+		return Format.plain().recover(CharBuffer.wrap(pattern));
+	}
+
+	@Benchmark
+	public Keycode parseStandardCached(KeyData data) {
+		return cache.parse(data.standardCodes[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode parsePlainCached(KeyData data) {
+		return cache.parse(data.plainCodes[data.next()]);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * A fixed pool of random keys, together with their pre-computed encodings,
+ * that benchmarks cycle through so that no single input is optimized for.
+ * 
+ * @author tomgibara
+ */
+
+@State(Scope.Thread)
+public class KeyData {
+
+	// must be a power of two
+	static final int COUNT = 1024;
+
+	static final Format CUSTOM = Format.custom("\t", "\r\n");
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xff;
+			chars[i * 2    ] = HEX[b >> 4];
+			chars[i * 2 + 1] = HEX[b & 0xf];
+		}
+		return new String(chars);
+	}
+
+	static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int hi = Character.digit(hex.charAt(i * 2    ), 16);
+			int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (hi < 0 || lo < 0) throw new IllegalArgumentException("invalid hex at " + (i * 2 + 1));
+			bytes[i] = (byte) (hi << 4 | lo);
+		}
+		return bytes;
+	}
+
+	byte[][] keys;
+	byte[] tags;
+	Keycode[] keycodes;
+	String[] plainCodes;
+	char[][] plainChars;
+	String[] standardCodes;
+	byte[][] standardBytes;
+	String[] customCodes;
+	String[] invalidCodes;
+	String[] hexCodes;
+	String[] base64Codes;
+
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		Random r = new Random(0L);
+		keys = new byte[COUNT][];
+		tags = new byte[COUNT];
+		keycodes = new Keycode[COUNT];
+		plainCodes = new String[COUNT];
+		plainChars = new char[COUNT][];
+		standardCodes = new String[COUNT];
+		standardBytes = new byte[COUNT][];
+		customCodes = new String[COUNT];
+		invalidCodes = new String[COUNT];
+		hexCodes = new String[COUNT];
+		base64Codes = new String[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			byte[] key = new byte[32];
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			Keycode keycode = Format.plain().keycode(key, tag);
+			keys[i] = key;
+			tags[i] = tag;
+			keycodes[i] = keycode;
+			plainCodes[i] = keycode.toString();
+			plainChars[i] = plainCodes[i].toCharArray();
+			standardCodes[i] = Format.standard().keycode(keycode).toString();
+			standardBytes[i] = standardCodes[i].getBytes(StandardCharsets.US_ASCII);
+			customCodes[i] = CUSTOM.keycode(keycode).toString();
+			// a transposition in a random row
+			char[] chars = plainCodes[i].toCharArray();
+			int j = r.nextInt(7) * 9 + r.nextInt(8);
+			if (chars[j] == chars[j + 1]) chars[j] = chars[j] == '1' ? '2' : '1';
+			char c = chars[j]; chars[j] = chars[j + 1]; chars[j + 1] = c;
+			invalidCodes[i] = new String(chars);
+			hexCodes[i] = toHex(key);
+			base64Codes[i] = Base64.getEncoder().encodeToString(key);
+		}
+	}
+
+	int next() {
+		return index = (index + 1) & (COUNT - 1);
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Measures encoding, validating and parsing keycodes for keys of different
+ * sizes, in the plain format.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeySizeBenchmark {
+
+	@Param({"128", "256", "512"})
+	int keySize;
+
+	private Format format;
+	private byte[][] keys;
+	private String[] codes;
+	private char[] chars;
+
+	@Setup
+	public void setup() {
+		format = Format.plain().withKeySize(keySize);
+		Random r = new Random(0L);
+		keys = new byte[KeyData.COUNT][keySize / 8];
+		codes = new String[KeyData.COUNT];
+		for (int i = 0; i < KeyData.COUNT; i++) {
+			r.nextBytes(keys[i]);
+			codes[i] = format.keycode(keys[i], (byte) r.nextInt(128)).toString();
+		}
+		chars = new char[format.getCodeLength()];
+	}
+
+	@Benchmark
+	public char[] encodeTo(KeyData data) {
+		format.encodeTo(keys[data.next()], 0, (byte) 0, chars, 0);
+		return chars;
+	}
+
+	@Benchmark
+	public int validate(KeyData data) {
+		return format.validate(codes[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode parse(KeyData data) {
+		return format.parse(codes[data.next()]);
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Compares looking up keys in an off-heap {@link KeycodeMap} with looking
+ * them up in a {@code HashMap<Keycode, Long>}, both by keycode and by the
+ * character data of a code. Also measures finding keys by their last row
+ * with a {@link LastRowIndex}.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapBenchmark {
+
+	private final KeycodeMap map = new KeycodeMap(KeyData.COUNT);
+	private final Map<Keycode, Long> hashMap = new HashMap<>();
+	private LastRowIndex index;
+	private String[] lastRows;
+
+	@Setup
+	public void setup(KeyData data) {
+		for (int i = 0; i < KeyData.COUNT; i++) {
+			map.put(data.keycodes[i], i);
+			hashMap.put(data.keycodes[i], (long) i);
+		}
+		index = LastRowIndex.of(Arrays.asList(data.keycodes));
+		lastRows = new String[KeyData.COUNT];
+		for (int i = 0; i < KeyData.COUNT; i++) {
+			lastRows[i] = Format.standard().keycode(data.keycodes[i]).getLastRow();
+		}
+	}
+
+	@Benchmark
+	public long getKeycode(KeyData data) {
+		return map.get(data.keycodes[data.next()], -1L);
+	}
+
+	@Benchmark
+	public Long getKeycodeHashMap(KeyData data) {
+		return hashMap.get(data.keycodes[data.next()]);
+	}
+
+	@Benchmark
+	public long getCode(KeyData data) {
+		return map.get(data.standardCodes[data.next()], -1L);
+	}
+
+	@Benchmark
+	public Long getCodeHashMap(KeyData data) {
+		return hashMap.get(Format.plain().parse(data.standardCodes[data.next()]));
+	}
+
+	@Benchmark
+	public int[] lookupLastRow(KeyData data) {
+		return index.lookup(lastRows[data.next()]);
+	}
+
+}
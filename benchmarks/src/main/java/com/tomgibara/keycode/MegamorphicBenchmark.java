@@ -0,0 +1,104 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Measures parsing and validation of strings after the JVM has, optionally,
+ * also parsed codes held in string builders and character buffers. Parsing
+ * several kinds of character sequence makes any shared call site that reads
+ * characters megamorphic, which prevents the JIT from inlining the reads.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MegamorphicBenchmark {
+
+	// enough calls for the polluted profiles to be compiled
+	private static final int POLLUTING_CALLS = 200000;
+
+	@Param({"false", "true"})
+	boolean polluted;
+
+	private StringBuilder[] builders;
+	private CharBuffer[] buffers;
+
+	@Setup
+	public void setup(KeyData data) {
+		builders = new StringBuilder[KeyData.COUNT];
+		buffers = new CharBuffer[KeyData.COUNT];
+		for (int i = 0; i < KeyData.COUNT; i++) {
+			builders[i] = new StringBuilder(data.standardCodes[i]);
+			buffers[i] = CharBuffer.wrap(data.standardCodes[i].toCharArray());
+		}
+		if (!polluted) return;
+		Format format = Format.standard();
+		int sum = 0;
+		for (int i = 0; i < POLLUTING_CALLS; i++) {
+			int j = i % KeyData.COUNT;
+			sum += format.validate(data.standardCodes[j]);
+			sum += format.validate(builders[j]);
+			sum += format.validate(buffers[j]);
+			sum += format.validate(CharBuffer.wrap(data.standardCodes[j]));
+			sum += format.parse(buffers[j]).getTag();
+		}
+		if (sum == 42) System.out.println();
+	}
+
+	@Benchmark
+	public Keycode parseString(KeyData data) {
+		return Format.standard().parse(data.standardCodes[data.next()]);
+	}
+
+	@Benchmark
+	public int validateString(KeyData data) {
+		return Format.standard().validate(data.standardCodes[data.next()]);
+	}
+
+	@Benchmark
+	public Keycode parseCharBuffer(KeyData data) {
+		return Format.standard().parse(buffers[data.next()]);
+	}
+
+	@Benchmark
+	public int validateBuilder(KeyData data) {
+		return Format.standard().validate(builders[data.next()]);
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the package-private encoding and checksum primitives from which
+ * keycodes are assembled. Each benchmark operates on a single row (or digit
+ * group) of a keycode.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitivesBenchmark {
+
+	private final char[] chars = new char[9];
+	private final byte[] bytes = new byte[5];
+
+	@Benchmark
+	public char[] writeBytesBase32(KeyData data) {
+		Encoder.writeBytesBase32(chars, 0, data.keys[data.next()], 0);
+		return chars;
+	}
+
+	@Benchmark
+	public byte[] parseBytesBase32(KeyData data) {
+		Encoder.parseBytesBase32(data.plainChars[data.next()], 0, bytes, 0);
+		return bytes;
+	}
+
+	@Benchmark
+	public char[] write9Bits(KeyData data) {
+		Encoder.write9Bits(chars, 0, data.next() & 0x1ff);
+		return chars;
+	}
+
+	@Benchmark
+	public int parse9Bits(KeyData data) {
+		return Encoder.parse9Bits(data.plainChars[data.next()], 54);
+	}
+
+	@Benchmark
+	public char computeTAQG32(KeyData data) {
+		return TAQG32.compute(data.plainChars[data.next()], 0, 8);
+	}
+
+	@Benchmark
+	public boolean verifyTAQG32(KeyData data) {
+		return TAQG32.verify(data.plainChars[data.next()], 0, 9);
+	}
+
+	@Benchmark
+	public char computeTAQG10(KeyData data) {
+		return TAQG10.compute(data.plainChars[data.next()], 54, 62);
+	}
+
+	@Benchmark
+	public boolean verifyTAQG10(KeyData data) {
+		return TAQG10.verify(data.plainChars[data.next()], 54, 63);
+	}
+
+}
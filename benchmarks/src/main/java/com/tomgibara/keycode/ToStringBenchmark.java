@@ -0,0 +1,82 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * Measures {@link Keycode#toString()} for each of the built-in formats, both
+ * for keycodes that have already been rendered and for keycodes that are
+ * rendered on every call.
+ * 
+ * @author tomgibara
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ToStringBenchmark {
+
+	@Param({"plain", "standard", "platform"})
+	String format;
+
+	private Format f;
+	private Keycode[] keycodes;
+
+	@Setup
+	public void setup(KeyData data) {
+		switch (format) {
+		case "plain"    : f = Format.plain();    break;
+		case "standard" : f = Format.standard(); break;
+		case "platform" : f = Format.platform(); break;
+		default: throw new IllegalArgumentException("unknown format: " + format);
+		}
+		keycodes = new Keycode[KeyData.COUNT];
+		for (int i = 0; i < keycodes.length; i++) {
+			keycodes[i] = f.keycode(data.keycodes[i]);
+		}
+	}
+
+	@Benchmark
+	public String toString(KeyData data) {
+		return keycodes[data.next()].toString();
+	}
+
+	// a new keycode on each call shares the computed code, so only the format is rendered
+	@Benchmark
+	public String render(KeyData data) {
+		return f.keycode(data.keycodes[data.next()]).toString();
+	}
+
+}
@@ -0,0 +1,356 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.tomgibara.keycode.Keycode;
+import com.tomgibara.keycode.Keycode.Format;
+import com.tomgibara.keycode.KeycodeWriter;
+import com.tomgibara.keycode.ParsedKeycodes;
+
+/**
+ * <p>
+ * An embedded HTTP service that encodes, parses and verifies keycodes, so
+ * that applications which are not running on a JVM can use the library
+ * without wrapping it themselves. The service is built on the HTTP server
+ * supplied with the JDK. Each request is handled on its own virtual thread
+ * when running on Java 21 or later, and on a pooled platform thread
+ * otherwise.
+ * <p>
+ * Every endpoint accepts a POST with a plain text body and responds with
+ * plain text. Keys are written as 64 hex digits, followed by a space and a
+ * decimal tag if the tag is non-zero, as they are by the command line tool.
+ * Requests with bodies larger than the maximum request size, 16MB by default,
+ * are refused with status 413.
+ * 
+ * <dl>
+ * <dt>/encode</dt>
+ * <dd>reads one key per line and responds with the keycodes in the format
+ * given by the optional {@code format} query parameter, which may be
+ * {@code plain} or {@code standard} (the default)</dd>
+ * <dt>/parse</dt>
+ * <dd>reads a single keycode and responds with its key, or with status 400
+ * and the reason the keycode is invalid</dd>
+ * <dt>/verify</dt>
+ * <dd>reads a single keycode and responds with {@code valid}, or with
+ * {@code invalid:} followed by the reason</dd>
+ * <dt>/batch</dt>
+ * <dd>reads any number of keycodes, separated by any whitespace, and
+ * responds with one line per keycode: its key, or {@code !} followed by the
+ * reason it is invalid</dd>
+ * </dl>
+ * 
+ * <pre>
+ * KeycodeServer [port]
+ * </pre>
+ * <p>
+ * Small responses are delayed by about 40ms unless the JDK server disables
+ * Nagle's algorithm, which it does only if the system property
+ * {@code sun.net.httpserver.nodelay} is {@code true} when its classes are
+ * first loaded. The property applies to every JDK HTTP server in the
+ * process, so it is set by {@link #main(String[])} but not by
+ * {@link #start(InetSocketAddress)}; applications that embed the server
+ * should set it on the command line.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeServer implements Closeable {
+
+	private static final int DEFAULT_PORT = 8035;
+	private static final int DEFAULT_MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public static void main(String[] args) throws IOException {
+		setNoDelay();
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		KeycodeServer server = start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		System.err.println("keycode server listening on " + server.getAddress() + (server.isVirtual() ? " (virtual threads)" : ""));
+	}
+
+	/**
+	 * Starts a server listening on the specified address. Port zero selects
+	 * an ephemeral port.
+	 * 
+	 * @param address
+	 *            the address to bind
+	 * @throws IOException
+	 *             if the server could not be bound
+	 * @return the running server
+	 */
+
+	public static KeycodeServer start(InetSocketAddress address) throws IOException {
+		return start(address, DEFAULT_MAX_REQUEST_SIZE);
+	}
+
+	/**
+	 * Starts a server listening on the specified address that refuses
+	 * requests with bodies larger than the specified number of bytes. Port
+	 * zero selects an ephemeral port.
+	 * 
+	 * @param address
+	 *            the address to bind
+	 * @param maxRequestSize
+	 *            the largest request body accepted, in bytes
+	 * @throws IOException
+	 *             if the server could not be bound
+	 * @return the running server
+	 */
+
+	public static KeycodeServer start(InetSocketAddress address, int maxRequestSize) throws IOException {
+		if (address == null) throw new IllegalArgumentException("null address");
+		if (maxRequestSize < 0) throw new IllegalArgumentException("negative maxRequestSize");
+		if (maxRequestSize == Integer.MAX_VALUE) throw new IllegalArgumentException("maxRequestSize too large");
+		return new KeycodeServer(address, maxRequestSize);
+	}
+
+	// without this, the JDK server leaves Nagle's algorithm enabled and small
+	// responses are held back for the client's delayed acknowledgement (~40ms);
+	// it affects every JDK server in the process, so it is only set by command line tools
+	static void setNoDelay() {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	// a virtual thread per task where supported, at runtime, on Java 21 or later
+	private static ExecutorService executor(boolean[] virtual) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			virtual[0] = true;
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private static Format format(URI uri) {
+		String query = uri.getRawQuery();
+		if (query == null) return Format.standard();
+		for (String param : query.split("&")) {
+			if (param.equals("format=plain")) return Format.plain();
+			if (param.equals("format=standard")) return Format.standard();
+			if (param.startsWith("format=")) throw new IllegalArgumentException("unknown format");
+		}
+		return Format.standard();
+	}
+
+	// the body of the request, or null if it is longer than the maximum size
+	private static String body(HttpExchange exchange, int maxSize) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] bytes = in.readNBytes(maxSize + 1);
+			return bytes.length > maxSize ? null : new String(bytes, StandardCharsets.US_ASCII);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=US-ASCII");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String str) throws IOException {
+		respond(exchange, status, str.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	// writes a key as hex, followed by its tag if non-zero
+	private static void appendKey(StringBuilder sb, Keycode keycode) {
+		for (byte b : keycode.getKey()) {
+			sb.append(HEX[b >> 4 & 0xf]).append(HEX[b & 0xf]);
+		}
+		if (keycode.getTag() != 0) sb.append(' ').append(keycode.getTag());
+		sb.append('\n');
+	}
+
+	// parses a line of 64 hex digits optionally followed by whitespace and a tag
+	private static void parseKey(String line, byte[] key, byte[] tag) {
+		if (line.length() < 64) throw new IllegalArgumentException("short hex key");
+		for (int i = 0; i < 32; i++) {
+			int hi = Character.digit(line.charAt(2 * i), 16);
+			int lo = Character.digit(line.charAt(2 * i + 1), 16);
+			if (hi < 0 || lo < 0) throw new IllegalArgumentException("invalid hex key");
+			key[i] = (byte) (hi << 4 | lo);
+		}
+		String rest = line.substring(64);
+		if (!rest.isEmpty() && !Character.isWhitespace(rest.charAt(0))) throw new IllegalArgumentException("long hex key");
+		rest = rest.trim();
+		if (rest.isEmpty()) {
+			tag[0] = 0;
+		} else {
+			int value;
+			try {
+				value = Integer.parseInt(rest);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid tag");
+			}
+			if (value < 0 || value > 127) throw new IllegalArgumentException("invalid tag");
+			tag[0] = (byte) value;
+		}
+	}
+
+	private abstract class Endpoint implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					respond(exchange, 405, "");
+					return;
+				}
+				String body = body(exchange, maxRequestSize);
+				if (body == null) {
+					respond(exchange, 413, "request too large\n");
+					return;
+				}
+				handle(exchange, body);
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, e.getMessage() + "\n");
+			} finally {
+				exchange.close();
+			}
+		}
+
+		abstract void handle(HttpExchange exchange, String body) throws IOException;
+
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final boolean virtual;
+	private final int maxRequestSize;
+
+	private KeycodeServer(InetSocketAddress address, int maxRequestSize) throws IOException {
+		this.maxRequestSize = maxRequestSize;
+		boolean[] virtual = new boolean[1];
+		executor = executor(virtual);
+		this.virtual = virtual[0];
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext("/encode", new Endpoint() {
+			@Override
+			void handle(HttpExchange exchange, String body) throws IOException {
+				Format format = format(exchange.getRequestURI());
+				byte[] key = new byte[32];
+				byte[] tag = new byte[1];
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Writer writer = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+				KeycodeWriter codes = format.writer(writer);
+				int lineNumber = 0;
+				for (String line : body.split("\r?\n")) {
+					lineNumber++;
+					if (line.trim().isEmpty()) continue;
+					try {
+						parseKey(line, key, tag);
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException(e.getMessage() + " at line " + lineNumber);
+					}
+					codes.writeKey(key, 0, tag[0]);
+				}
+				codes.flush();
+				respond(exchange, 200, out.toByteArray());
+			}
+		});
+		server.createContext("/parse", new Endpoint() {
+			@Override
+			void handle(HttpExchange exchange, String body) throws IOException {
+				StringBuilder sb = new StringBuilder(68);
+				appendKey(sb, Format.plain().parse(body.trim()));
+				respond(exchange, 200, sb.toString());
+			}
+		});
+		server.createContext("/verify", new Endpoint() {
+			@Override
+			void handle(HttpExchange exchange, String body) throws IOException {
+				String response;
+				try {
+					Format.plain().parse(body.trim());
+					response = "valid\n";
+				} catch (IllegalArgumentException e) {
+					response = "invalid: " + e.getMessage() + "\n";
+				}
+				respond(exchange, 200, response);
+			}
+		});
+		server.createContext("/batch", new Endpoint() {
+			@Override
+			void handle(HttpExchange exchange, String body) throws IOException {
+				ParsedKeycodes parsed = Format.plain().parseAll(body);
+				StringBuilder sb = new StringBuilder(parsed.size() * 68);
+				for (int i = 0; i < parsed.size(); i++) {
+					if (parsed.isValid(i)) {
+						appendKey(sb, parsed.get(i));
+					} else {
+						sb.append("! ").append(parsed.getFailure(i)).append('\n');
+					}
+				}
+				respond(exchange, 200, sb.toString());
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * The address on which the server is listening.
+	 * 
+	 * @return the bound address
+	 */
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Whether requests are handled on virtual threads.
+	 * 
+	 * @return true if virtual threads are used
+	 */
+
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Stops the server, without waiting for exchanges in progress.
+	 */
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * A load test for the {@link KeycodeServer} over the loopback interface.
+ * An in-process server is started on an ephemeral port, unless the URI of a
+ * running server is supplied, and a number of clients repeatedly post
+ * batches of random keycodes to its {@code /batch} endpoint. Throughput is
+ * reported together with request latencies and the mean latency per code.
+ * 
+ * <pre>
+ * LoadTest [-c clients] [-n requests] [-b batchSize] [uri]
+ * </pre>
+ * 
+ * @author tomgibara
+ */
+
+public final class LoadTest {
+
+	public static void main(String[] args) throws Exception {
+		int clients = 4;
+		int requests = 1000;
+		int batchSize = 1000;
+		URI uri = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-c": clients = Integer.parseInt(args[++i]); break;
+			case "-n": requests = Integer.parseInt(args[++i]); break;
+			case "-b": batchSize = Integer.parseInt(args[++i]); break;
+			default: uri = URI.create(args[i]);
+			}
+		}
+
+		KeycodeServer server = null;
+		if (uri == null) {
+			KeycodeServer.setNoDelay();
+			server = KeycodeServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+		}
+		try {
+			run(uri.resolve("batch"), clients, requests, batchSize);
+		} finally {
+			if (server != null) server.close();
+		}
+	}
+
+	private static void run(final URI uri, int clients, final int requests, int batchSize) throws IOException, InterruptedException, ExecutionException {
+		// the body posted by every request
+		Random r = new Random(0L);
+		StringBuilder sb = new StringBuilder();
+		byte[] key = new byte[32];
+		for (int i = 0; i < batchSize; i++) {
+			r.nextBytes(key);
+			sb.append(Format.standard().keycode(key)).append("\n\n");
+		}
+		final String body = sb.toString();
+		final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+		// warm up the server and client
+		request(client, uri, body);
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		List<Future<long[]>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			futures.add(executor.submit(() -> {
+				long[] latencies = new long[requests];
+				for (int i = 0; i < requests; i++) {
+					long t = System.nanoTime();
+					request(client, uri, body);
+					latencies[i] = System.nanoTime() - t;
+				}
+				return latencies;
+			}));
+		}
+		long[] latencies = new long[clients * requests];
+		for (int c = 0; c < clients; c++) {
+			System.arraycopy(futures.get(c).get(), 0, latencies, c * requests, requests);
+		}
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		Arrays.sort(latencies);
+		long total = 0L;
+		for (long latency : latencies) total += latency;
+		long codes = (long) latencies.length * batchSize;
+		System.out.println(String.format(Locale.ROOT, "%d clients, %d requests of %d codes", clients, latencies.length, batchSize));
+		System.out.println(String.format(Locale.ROOT, "throughput: %.0f codes/s", codes * 1e9 / elapsed));
+		System.out.println(String.format(Locale.ROOT, "request latency: mean %.3f ms, p50 %.3f ms, p99 %.3f ms",
+				total / 1e6 / latencies.length, percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6));
+		System.out.println(String.format(Locale.ROOT, "latency per code: %.3f us", total / 1e3 / codes));
+	}
+
+	private static long percentile(long[] sorted, int p) {
+		return sorted[Math.min(sorted.length - 1, sorted.length * p / 100)];
+	}
+
+	private static void request(HttpClient client, URI uri, String body) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+		HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+		if (response.statusCode() != 200) throw new IOException("status " + response.statusCode());
+		if (response.body().indexOf('!') >= 0) throw new IOException("invalid codes reported");
+	}
+
+}
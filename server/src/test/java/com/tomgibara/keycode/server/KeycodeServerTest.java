@@ -0,0 +1,123 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode;
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeServerTest extends TestCase {
+
+	private KeycodeServer server;
+	private HttpClient client;
+
+	@Override
+	protected void setUp() throws IOException {
+		server = KeycodeServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		client = HttpClient.newHttpClient();
+	}
+
+	@Override
+	protected void tearDown() {
+		server.close();
+	}
+
+	private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+		URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+		HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static String hex(Keycode keycode) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : keycode.getKey()) sb.append(String.format("%02x", b & 0xff));
+		if (keycode.getTag() != 0) sb.append(' ').append(keycode.getTag());
+		return sb.toString();
+	}
+
+	public void testEndpoints() throws Exception {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		Keycode keycode = Format.standard().keycode(key, (byte) 5);
+		String code = keycode.toString();
+
+		HttpResponse<String> response = post("/encode", hex(keycode) + "\n");
+		assertEquals(200, response.statusCode());
+		assertEquals(code + "\n\n", response.body());
+		response = post("/encode?format=plain", hex(keycode) + "\n");
+		assertEquals(Format.plain().keycode(keycode) + "\n", response.body());
+		assertEquals(400, post("/encode", "123\n").statusCode());
+		assertEquals(400, post("/encode?format=other", hex(keycode)).statusCode());
+
+		response = post("/parse", code);
+		assertEquals(200, response.statusCode());
+		assertEquals(hex(keycode) + "\n", response.body());
+		String invalid = code.substring(0, code.length() - 1) + (code.endsWith("1") ? '2' : '1');
+		assertEquals(400, post("/parse", invalid).statusCode());
+
+		assertEquals("valid\n", post("/verify", code).body());
+		assertTrue(post("/verify", invalid).body().startsWith("invalid: "));
+	}
+
+	public void testMaxRequestSize() throws Exception {
+		server.close();
+		server = KeycodeServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 200);
+		Keycode keycode = Format.standard().keycode(new byte[32]);
+		assertEquals(200, post("/verify", keycode.toString()).statusCode());
+		StringBuilder codes = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			codes.append(keycode).append('\n');
+		}
+		HttpResponse<String> response = post("/batch", codes.toString());
+		assertEquals(413, response.statusCode());
+		assertEquals("request too large\n", response.body());
+	}
+
+	public void testBatch() throws Exception {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		StringBuilder codes = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			r.nextBytes(key);
+			Keycode keycode = Format.standard().keycode(key, (byte) r.nextInt(128));
+			String code = keycode.toString();
+			if (i % 100 == 7) {
+				code = code.substring(0, code.length() - 1) + (code.endsWith("1") ? '2' : '1');
+				expected.append("! ").append(Format.plain().parseAll(code).getFailure(0)).append('\n');
+			} else {
+				expected.append(hex(keycode)).append('\n');
+			}
+			codes.append(code).append("\n\n");
+		}
+		HttpResponse<String> response = post("/batch", codes.toString());
+		assertEquals(200, response.statusCode());
+		assertEquals(expected.toString(), response.body());
+	}
+
+}
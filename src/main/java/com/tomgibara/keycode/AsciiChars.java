@@ -0,0 +1,68 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Presents a range of bytes as a sequence of characters so that ASCII data can
+ * be parsed without first decoding it into a string. Bytes map directly to
+ * characters in the range 0-255, so that non-ASCII bytes are reported as
+ * non-ASCII characters. The bytes are read with absolute gets which do not
+ * disturb the position of the buffer, and which work equally for heap and
+ * direct buffers.
+ */
+
+final class AsciiChars implements CharSequence {
+
+	private final ByteBuffer buffer;
+	private final int start;
+	private final int length;
+
+	AsciiChars(ByteBuffer buffer, int start, int length) {
+		this.buffer = buffer;
+		this.start = start;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) throw new IndexOutOfBoundsException();
+		return (char) (buffer.get(start + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException();
+		return new AsciiChars(buffer, this.start + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = charAt(i);
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+/*
+ * Decodes many contiguous keycodes at once on behalf of KeycodeBatch.
+ * 
+ * This is the scalar implementation. Multi-release jars also contain a
+ * Java 17 version of this class (see src/main/java17) which uses the
+ * incubating vector API, when it is available, to check the
+ * base32 rows of many keycodes in parallel lanes.
+ */
+
+final class BulkCodec {
+
+	static final boolean VECTORIZED = false;
+
+	static int decode(char[] chars, int offset, int count, byte[] keys, boolean[] valid) {
+		return KeycodeBatch.decode(chars, offset, count, keys, valid);
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+/**
+ * <p>
+ * A change to the characters of an invalid keycode which would make it valid.
+ * Corrections are obtained from
+ * {@link Keycode.Format#suggestCorrections(CharSequence)} and consist either of
+ * a single substituted character, or of two adjacent characters (ignoring
+ * whitespace) which have been swapped.
+ * <p>
+ * Positions index the character data that was supplied for correction, so
+ * that whitespace in the original is preserved.
+ * <p>
+ * Instances of this class are immutable and threadsafe.
+ * 
+ * @author tomgibara
+ */
+
+public final class Correction {
+
+	/**
+	 * The kind of error that a correction repairs.
+	 */
+
+	public enum Type {
+
+		/**
+		 * A single character has been replaced by another.
+		 */
+
+		SUBSTITUTION,
+
+		/**
+		 * Two adjacent characters have been swapped.
+		 */
+
+		TRANSPOSITION;
+
+	}
+
+	private final Type type;
+	private final String code;
+	private final int position;
+	private final int otherPosition;
+	private final char replacement;
+	private final Keycode keycode;
+
+	Correction(Type type, String code, int position, int otherPosition, char replacement, Keycode keycode) {
+		this.type = type;
+		this.code = code;
+		this.position = position;
+		this.otherPosition = otherPosition;
+		this.replacement = replacement;
+		this.keycode = keycode;
+	}
+
+	/**
+	 * The kind of error that this correction repairs.
+	 * 
+	 * @return the correction type
+	 */
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The position of the character which is substituted, or of the first of
+	 * the characters which are swapped.
+	 * 
+	 * @return an index into the supplied character data
+	 */
+
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * The position of the second of the characters which are swapped. For a
+	 * substitution, this is the same as {@link #getPosition()}.
+	 * 
+	 * @return an index into the supplied character data
+	 */
+
+	public int getOtherPosition() {
+		return otherPosition;
+	}
+
+	/**
+	 * The corrected character data, including any whitespace in the
+	 * original.
+	 * 
+	 * @return the character data with the correction applied
+	 */
+
+	public String getCorrectedCode() {
+		char[] chars = code.toCharArray();
+		if (type == Type.SUBSTITUTION) {
+			chars[position] = replacement;
+		} else {
+			chars[position] = code.charAt(otherPosition);
+			chars[otherPosition] = code.charAt(position);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * The keycode that is obtained by applying this correction.
+	 * 
+	 * @return the corrected keycode
+	 */
+
+	public Keycode getKeycode() {
+		return keycode;
+	}
+
+	@Override
+	public int hashCode() {
+		return keycode.hashCode() + 31 * (position + 31 * otherPosition);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof Correction)) return false;
+		Correction that = (Correction) obj;
+		if (this.type != that.type) return false;
+		if (this.position != that.position) return false;
+		if (this.otherPosition != that.otherPosition) return false;
+		if (this.replacement != that.replacement) return false;
+		if (!this.code.equals(that.code)) return false;
+		if (!this.keycode.equals(that.keycode)) return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		switch (type) {
+		case SUBSTITUTION:
+			return "replace '" + code.charAt(position) + "' with '" + replacement + "' at character " + (position + 1);
+		default:
+			return "swap '" + code.charAt(position) + "' and '" + code.charAt(otherPosition) + "' at character " + (position + 1);
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.CHARS_32;
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.tomgibara.keycode.Correction.Type;
+import com.tomgibara.keycode.Keycode.Format;
+
+/*
+ * Finds the single character errors that could account for an invalid
+ * keycode.
+ * 
+ * Correction is attempted when exactly one row is invalid, or when two
+ * adjacent rows are invalid, in which case only swapping the characters on
+ * either side of the boundary between the rows is considered. For base32
+ * rows, the checksum of a row is linear in the values of its characters, so a
+ * non-zero checksum (the syndrome) determines exactly one substitution at each
+ * position that would correct it, and the adjacent swaps that would correct it
+ * can be identified by the difference of the swapped values; both are read
+ * from tables in TAQG32. Since every value is a valid character, all of these
+ * candidates are valid corrections. The last row has few enough candidates
+ * that they are simply tried.
+ * 
+ * Corrections are ranked: a substitution for an invalid character first, then
+ * transpositions (which are detected by, but rarely coincide with, the
+ * checksum), then substitutions of characters that are easily confused, and
+ * finally other substitutions, each in order of position.
+ */
+
+final class Corrector {
+
+	private static final int FORCED = 0;
+	private static final int TRANSPOSED = 1;
+	private static final int CONFUSED = 2;
+	private static final int SUBSTITUTED = 3;
+
+	// groups of characters that are easily mistaken for each other
+	private static final String[] CONFUSABLES = {
+		"0DQ", "17JLT", "6G", "8B", "UVY", "MNW", "CG", "EF", "PR", "KX", "4A", "38", "56", "69",
+	};
+
+	// CONFUSABLE[a << 7 | b] is true if a may be mistaken for b
+	private static final boolean[] CONFUSABLE = new boolean[128 * 128];
+
+	static {
+		for (String group : CONFUSABLES) {
+			for (int i = 0; i < group.length(); i++) {
+				for (int j = 0; j < group.length(); j++) {
+					if (i != j) CONFUSABLE[group.charAt(i) << 7 | group.charAt(j)] = true;
+				}
+			}
+		}
+	}
+
+	private static final class Candidate implements Comparable<Candidate> {
+
+		final int rank;
+		final int index;
+		final int otherIndex;
+		final char replacement;
+
+		Candidate(int rank, int index, int otherIndex, char replacement) {
+			this.rank = rank;
+			this.index = index;
+			this.otherIndex = otherIndex;
+			this.replacement = replacement;
+		}
+
+		@Override
+		public int compareTo(Candidate that) {
+			if (this.rank != that.rank) return this.rank < that.rank ? -1 : 1;
+			return this.index - that.index;
+		}
+
+	}
+
+	static List<Correction> suggest(Format format, CharSequence code) {
+		String str = code.toString();
+		List<Correction> none = Collections.emptyList();
+
+		// gather the significant characters
+		char[] chars = new char[63];
+		int[] positions = new int[63];
+		int count = 0;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			if (count == 63) return none;
+			positions[count] = i;
+			chars[count++] = c;
+		}
+		if (count != 63) return none;
+		if (Keycode.decode(chars, 0, null, 0) >= 0) return none;
+
+		// identify the invalid rows, of which there may be two if a swap spans rows
+		int first = -1;
+		int second = -1;
+		for (int row = 0; row < 7; row++) {
+			if (row < 6 ? isValidRow(chars, row * 9) : isValidLastRow(chars)) continue;
+			if (first < 0) {
+				first = row;
+			} else if (second < 0) {
+				second = row;
+			} else {
+				return none;
+			}
+		}
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		if (second < 0) {
+			if (first == 6) {
+				correctLastRow(chars, candidates);
+			} else {
+				correctRow(chars, first * 9, candidates);
+			}
+		} else if (second == first + 1) {
+			int i = first * 9 + 8;
+			char a = chars[i];
+			char b = chars[i + 1];
+			chars[i] = b;
+			chars[i + 1] = a;
+			if (Keycode.decode(chars, 0, null, 0) >= 0) candidates.add(new Candidate(TRANSPOSED, i, i + 1, '\0'));
+			chars[i] = a;
+			chars[i + 1] = b;
+		}
+		Collections.sort(candidates);
+
+		// apply the corrections
+		List<Correction> corrections = new ArrayList<Correction>(candidates.size());
+		for (Candidate candidate : candidates) {
+			char[] corrected = chars.clone();
+			Type type;
+			if (candidate.index == candidate.otherIndex) {
+				type = Type.SUBSTITUTION;
+				corrected[candidate.index] = candidate.replacement;
+			} else {
+				type = Type.TRANSPOSITION;
+				corrected[candidate.index] = chars[candidate.otherIndex];
+				corrected[candidate.otherIndex] = chars[candidate.index];
+			}
+			byte[] key = new byte[33];
+			int tag = Keycode.decode(corrected, 0, key, 0);
+			if (tag < 0) continue; // not expected
+			key[32] = (byte) tag;
+			Keycode keycode = new Keycode(format, key, new String(corrected));
+			corrections.add(new Correction(type, str, positions[candidate.index], positions[candidate.otherIndex], candidate.replacement, keycode));
+		}
+		return Collections.unmodifiableList(corrections);
+	}
+
+	private static boolean isValid(char c) {
+		return c < 128 && VALUES_32[c] >= 0;
+	}
+
+	private static boolean isValidRow(char[] chars, int start) {
+		for (int i = 0; i < 9; i++) {
+			if (!isValid(chars[start + i])) return false;
+		}
+		return TAQG32.syndrome(chars, start) == 0;
+	}
+
+	private static boolean isValidLastRow(char[] chars) {
+		return Keycode.checkLastRow(chars, 0) >= 0 && Keycode.decodeLastRow(chars, 0, null, 0) >= 0;
+	}
+
+	private static int rank(char original, char replacement) {
+		return original < 128 && CONFUSABLE[original << 7 | replacement] ? CONFUSED : SUBSTITUTED;
+	}
+
+	private static void correctRow(char[] chars, int start, List<Candidate> candidates) {
+		int invalid = -1;
+		for (int i = 0; i < 9; i++) {
+			if (isValid(chars[start + i])) continue;
+			if (invalid >= 0) return;
+			invalid = i;
+		}
+		// invalid characters contribute nothing to the syndrome
+		int syndrome = TAQG32.syndrome(chars, start);
+		if (invalid >= 0) {
+			char c = CHARS_32[TAQG32.substitution(invalid, syndrome)];
+			candidates.add(new Candidate(FORCED, start + invalid, start + invalid, c));
+			return;
+		}
+		for (int i = 0; i < 9; i++) {
+			char original = chars[start + i];
+			char c = CHARS_32[VALUES_32[original] ^ TAQG32.substitution(i, syndrome)];
+			candidates.add(new Candidate(rank(original, c), start + i, start + i, c));
+		}
+		for (int i = 0; i < 8; i++) {
+			int difference = VALUES_32[chars[start + i]] ^ VALUES_32[chars[start + i + 1]];
+			if (difference != 0 && difference == TAQG32.transposition(i, syndrome)) {
+				candidates.add(new Candidate(TRANSPOSED, start + i, start + i + 1, '\0'));
+			}
+		}
+	}
+
+	private static void correctLastRow(char[] chars, List<Candidate> candidates) {
+		int invalid = -1;
+		for (int i = 54; i < 63; i++) {
+			char c = chars[i];
+			if (c >= '0' && c <= '9') continue;
+			if (invalid >= 0) return;
+			invalid = i;
+		}
+		if (invalid >= 0) {
+			substitute(chars, invalid, FORCED, candidates);
+			return;
+		}
+		for (int i = 54; i < 63; i++) {
+			substitute(chars, i, -1, candidates);
+		}
+		for (int i = 54; i < 62; i++) {
+			char a = chars[i];
+			char b = chars[i + 1];
+			if (a == b) continue;
+			chars[i] = b;
+			chars[i + 1] = a;
+			if (isValidLastRow(chars)) candidates.add(new Candidate(TRANSPOSED, i, i + 1, '\0'));
+			chars[i] = a;
+			chars[i + 1] = b;
+		}
+	}
+
+	// tries every digit at index, ranking by confusability if no rank is specified
+	private static void substitute(char[] chars, int index, int rank, List<Candidate> candidates) {
+		char original = chars[index];
+		for (char c = '0'; c <= '9'; c++) {
+			if (c == original) continue;
+			chars[index] = c;
+			if (isValidLastRow(chars)) candidates.add(new Candidate(rank < 0 ? rank(original, c) : rank, index, index, c));
+		}
+		chars[index] = original;
+	}
+
+}
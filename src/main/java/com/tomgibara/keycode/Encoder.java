@@ -43,7 +43,43 @@ final class Encoder {
 		}
 	}
 	
-	static void append9Bits(StringBuilder sb, int val) {
+	// the decimal digits of the triples that encode 9 bit values, eg. 102 for 0
+	static final short[] TRIPLES_9 = new short[512];
+	// the 9 bit values encoded by every three digit decimal number
+	static final short[] VALUES_9 = new short[1000];
+	// the decimal digits of the pairs that encode 6 bit values, eg. 10 for 0
+	static final byte[] PAIRS_6 = new byte[64];
+	// the 6 bit values encoded by every two digit decimal number
+	static final byte[] VALUES_6 = new byte[100];
+	// the characters of TRIPLES_9 and PAIRS_6, three and two per value respectively
+	private static final char[] TRIPLE_CHARS = new char[512 * 3];
+	private static final char[] PAIR_CHARS = new char[64 * 2];
+
+	static {
+		for (int val = 0; val < 512; val++) {
+			int t = digits9Bits(val);
+			TRIPLES_9[val] = (short) t;
+			TRIPLE_CHARS[val * 3    ] = (char) (48 + t / 100     );
+			TRIPLE_CHARS[val * 3 + 1] = (char) (48 + t / 10 % 10);
+			TRIPLE_CHARS[val * 3 + 2] = (char) (48 + t % 10     );
+		}
+		for (int t = 0; t < 1000; t++) {
+			VALUES_9[t] = (short) value9Bits(t / 100, t / 10 % 10, t % 10);
+		}
+		for (int val = 0; val < 64; val++) {
+			int p = digits6Bits(val);
+			PAIRS_6[val] = (byte) p;
+			PAIR_CHARS[val * 2    ] = (char) (48 + p / 10);
+			PAIR_CHARS[val * 2 + 1] = (char) (48 + p % 10);
+		}
+		for (int p = 0; p < 100; p++) {
+			VALUES_6[p] = (byte) value6Bits(p / 10, p % 10);
+		}
+	}
+
+	// the arithmetic from which the digit tables are generated
+
+	private static int digits9Bits(int val) {
 		int a = val / (9 * 8);
 		a++;
 		val %= 9 * 8;
@@ -56,16 +92,10 @@ final class Encoder {
 		if (c >= Math.min(a,b))  c++;
 		if (c >= Math.max(a,b)) c++;
 
-		sb.append((char) (48 + a));
-		sb.append((char) (48 + b));
-		sb.append((char) (48 + c));
+		return (a * 10 + b) * 10 + c;
 	}
 
-	static int parse9Bits(CharSequence src, int start) {
-		int a = src.charAt(start + 0) - 48;
-		int b = src.charAt(start + 1) - 48;
-		int c = src.charAt(start + 2) - 48;
-
+	private static int value9Bits(int a, int b, int c) {
 		{
 			int dc = 0;
 			if (c > a) dc++;
@@ -77,26 +107,51 @@ final class Encoder {
 		return (a * 9 + b) * 8 + c;
 	}
 
-	static void append6Bits(StringBuilder sb, int val) {
+	private static int digits6Bits(int val) {
 		int a = val / 9;
 		a++;
 		val %= 9;
-		sb.append((char) (48 + a));
 
 		int b = val;
 		if (b >= a) b++;
-		sb.append((char) (48 + b));
+
+		return a * 10 + b;
 	}
 
-	static int parse6Bits(CharSequence src, int start) {
-		int a = src.charAt(start + 0) - 48;
-		int b = src.charAt(start + 1) - 48;
-		
+	private static int value6Bits(int a, int b) {
 		if (b > a) b--;
 		a--;
 		return a * 9 + b;
 	}
 
+	static void write9Bits(char[] cs, int start, int val) {
+		int i = val * 3;
+		cs[start    ] = TRIPLE_CHARS[i    ];
+		cs[start + 1] = TRIPLE_CHARS[i + 1];
+		cs[start + 2] = TRIPLE_CHARS[i + 2];
+	}
+
+	// the characters must be digits
+	static int parse9Bits(char[] src, int start) {
+		int a = src[start    ];
+		int b = src[start + 1];
+		int c = src[start + 2];
+		return VALUES_9[a * 100 + b * 10 + c - 48 * 111];
+	}
+
+	static void write6Bits(char[] cs, int start, int val) {
+		int i = val * 2;
+		cs[start    ] = PAIR_CHARS[i    ];
+		cs[start + 1] = PAIR_CHARS[i + 1];
+	}
+
+	// the characters must be digits
+	static int parse6Bits(char[] src, int start) {
+		int a = src[start    ];
+		int b = src[start + 1];
+		return VALUES_6[a * 10 + b - 48 * 11];
+	}
+
 /*
 	    0       1       2       3       4   
 	[      ][      ][      ][      ][      ]
@@ -104,42 +159,145 @@ final class Encoder {
 	aaaaabbbbbcccccdddddeeeeefffffggggghhhhh
 */
 
-	static void appendBytesBase32(StringBuilder sb, byte[] bs, int from) {
-		int a = ((bs[from    ] & 0xf8) >> 3);
-		int b = ((bs[from    ] & 0x07) << 2) | ((bs[from + 1] & 0xc0) >> 6);
-		int c = ((bs[from + 1] & 0x3e) >> 1);
-		int d = ((bs[from + 1] & 0x01) << 4) | ((bs[from + 2] & 0xf0) >> 4);
-		int e = ((bs[from + 2] & 0x0f) << 1) | ((bs[from + 3] & 0x80) >> 7);
-		int f = ((bs[from + 3] & 0x7c) >> 2);
-		int g = ((bs[from + 3] & 0x03) << 3) | ((bs[from + 4] & 0xe0) >> 5);
-		int h =  (bs[from + 4] & 0x1f);
-		
-		sb.append(CHARS_32[a]);
-		sb.append(CHARS_32[b]);
-		sb.append(CHARS_32[c]);
-		sb.append(CHARS_32[d]);
-		sb.append(CHARS_32[e]);
-		sb.append(CHARS_32[f]);
-		sb.append(CHARS_32[g]);
-		sb.append(CHARS_32[h]);
+/*
+	Rows are coded a word at a time: the 40 bits of a row are loaded into a
+	long and spread so that each 5 bit value occupies its own byte lane, with
+	the first value in the most significant lane. Values are then mapped to
+	and from ASCII in every lane at once, using the high bit of each lane to
+	hold the result of comparing it against the boundaries of the alphabet.
+*/
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH = 0x8080808080808080L;
+
+	// the high bit of each lane is set if the lane is greater than or equal to k (all lanes below 128)
+	private static long atLeast(long lanes, int k) {
+		return (lanes + (128 - k) * ONES) & HIGH;
 	}
-	
-	static void parseBytesBase32(CharSequence src, int start, byte[] key, int offset) {
-		int a = VALUES_32[src.charAt(start    )];
-		int b = VALUES_32[src.charAt(start + 1)];
-		int c = VALUES_32[src.charAt(start + 2)];
-		int d = VALUES_32[src.charAt(start + 3)];
-		int e = VALUES_32[src.charAt(start + 4)];
-		int f = VALUES_32[src.charAt(start + 5)];
-		int g = VALUES_32[src.charAt(start + 6)];
-		int h = VALUES_32[src.charAt(start + 7)];
-
-		key[offset    ] = (byte) ((a << 3) | (b >> 2));
-		key[offset + 1] = (byte) ((b << 6) | (c << 1) | (d >> 4));
-		key[offset + 2] = (byte) ((d << 4) | (e >> 1));
-		key[offset + 3] = (byte) ((e << 7) | (f << 2) | (g >> 3));
-		key[offset + 4] = (byte) ((g << 5) |  h      );
+
+	// the high bit of each lane is set if the lane lies between lo and hi inclusive
+	private static long between(long lanes, int lo, int hi) {
+		return atLeast(lanes, lo) & ~atLeast(lanes, hi + 1);
+	}
+
+	// the 40 bits of a row, one value in each of eight byte lanes
+	static long spread(long bits) {
+		bits = ((bits & 0x000000FFFFF00000L) << 12) | (bits & 0x00000000000FFFFFL);
+		bits = ((bits & 0x000FFC00000FFC00L) <<  6) | (bits & 0x000003FF000003FFL);
+		bits = ((bits & 0x03E003E003E003E0L) <<  3) | (bits & 0x001F001F001F001FL);
+		return bits;
 	}
 
+	// the inverse of spread
+	static long compress(long lanes) {
+		lanes = ((lanes & 0x1F001F001F001F00L) >>>  3) | (lanes & 0x001F001F001F001FL);
+		lanes = ((lanes & 0x03FF000003FF0000L) >>>  6) | (lanes & 0x000003FF000003FFL);
+		lanes = ((lanes & 0x000FFFFF00000000L) >>> 12) | (lanes & 0x00000000000FFFFFL);
+		return lanes;
+	}
+
+	// maps values (below 32) to the ASCII characters of CHARS_32
+	static long valuesToChars(long values) {
+		long chars = values + '0' * ONES;
+		chars += (atLeast(values, 10) >>> 7) * 7; // skip ':' to '@'
+		chars += (atLeast(values, 18) >>> 7);     // skip 'I'
+		chars += (atLeast(values, 23) >>> 7);     // skip 'O'
+		chars += (atLeast(values, 26) >>> 7);     // skip 'S'
+		return chars;
+	}
+
+	// maps ASCII characters of CHARS_32 to their values, other characters yield undefined values
+	static long charsToValues(long chars) {
+		long values = chars - '0' * ONES;
+		values -= (atLeast(chars, 'A') >>> 7) * 7;
+		values -= (atLeast(chars, 'J') >>> 7);
+		values -= (atLeast(chars, 'P') >>> 7);
+		values -= (atLeast(chars, 'T') >>> 7);
+		return values;
+	}
+
+	// true if every lane holds an ASCII character of CHARS_32
+	static boolean isBase32(long chars) {
+		if ((chars & HIGH) != 0) return false;
+		long valid =
+				between(chars, '0', '9') |
+				between(chars, 'A', 'H') |
+				between(chars, 'J', 'N') |
+				between(chars, 'P', 'R') |
+				between(chars, 'T', 'Y');
+		return valid == HIGH;
+	}
+
+	// the eight characters at start, one per lane, or -1 if any is not ASCII
+	static long loadChars(char[] src, int start) {
+		long chars = 0L;
+		int or = 0;
+		for (int i = start; i < start + 8; i++) {
+			char c = src[i];
+			or |= c;
+			chars = chars << 8 | c;
+		}
+		return or < 128 ? chars : -1L;
+	}
+
+	private static long loadBits(byte[] bs, int from) {
+		return
+				(bs[from    ] & 0xffL) << 32 |
+				(bs[from + 1] & 0xffL) << 24 |
+				(bs[from + 2] & 0xffL) << 16 |
+				(bs[from + 3] & 0xffL) <<  8 |
+				(bs[from + 4] & 0xffL);
+	}
+
+	private static void storeBits(long bits, byte[] bs, int from) {
+		bs[from    ] = (byte) (bits >> 32);
+		bs[from + 1] = (byte) (bits >> 24);
+		bs[from + 2] = (byte) (bits >> 16);
+		bs[from + 3] = (byte) (bits >>  8);
+		bs[from + 4] = (byte) (bits      );
+	}
+
+	static void writeBytesBase32(char[] cs, int start, byte[] bs, int from) {
+		writeBitsBase32(cs, start, loadBits(bs, from));
+	}
+
+	// writes a row holding fewer than five bytes, the remaining bits being zero
+	static void writeBytesBase32(char[] cs, int start, byte[] bs, int from, int count) {
+		long bits = 0L;
+		for (int i = 0; i < 5; i++) {
+			bits = bits << 8 | (i < count ? bs[from + i] & 0xffL : 0L);
+		}
+		writeBitsBase32(cs, start, bits);
+	}
+
+	private static void writeBitsBase32(char[] cs, int start, long bits) {
+		long chars = valuesToChars(spread(bits));
+		cs[start    ] = (char) (chars >>> 56       );
+		cs[start + 1] = (char) (chars >>> 48 & 0xff);
+		cs[start + 2] = (char) (chars >>> 40 & 0xff);
+		cs[start + 3] = (char) (chars >>> 32 & 0xff);
+		cs[start + 4] = (char) (chars >>> 24 & 0xff);
+		cs[start + 5] = (char) (chars >>> 16 & 0xff);
+		cs[start + 6] = (char) (chars >>>  8 & 0xff);
+		cs[start + 7] = (char) (chars        & 0xff);
+	}
+
+	// the characters must be valid
+	static void parseBytesBase32(char[] src, int start, byte[] key, int offset) {
+		storeBits(parseBitsBase32(src, start), key, offset);
+	}
+
+	// parses the first count bytes of a row, the remaining bits are disregarded
+	static void parseBytesBase32(char[] src, int start, byte[] key, int offset, int count) {
+		long bits = parseBitsBase32(src, start);
+		for (int i = 0; i < count; i++) {
+			key[offset + i] = (byte) (bits >> 32 - i * 8);
+		}
+	}
+
+	// the 40 bits of a row
+	static long parseBitsBase32(char[] src, int start) {
+		return compress(charsToValues(loadChars(src, start)));
+	}
 
 }
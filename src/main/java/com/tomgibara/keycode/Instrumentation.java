@@ -0,0 +1,91 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * The opt-in switch for instrumentation. ENABLED is a static final constant,
+ * so when instrumentation is disabled (the default) the guarded calls at each
+ * instrumented site are eliminated by the JIT compiler and parsing is never
+ * timed. When it is enabled, statistics are published through JMX (see
+ * KeycodeStatsMXBean) and parses which fail, or take longer than the
+ * threshold given by the system property com.tomgibara.keycode.instrument.slow
+ * (in nanoseconds, one millisecond by default) are reported to ParseEvents.
+ */
+
+final class Instrumentation {
+
+	static final boolean ENABLED = isEnabled();
+
+	static final KeycodeStats STATS = ENABLED ? register(new KeycodeStats()) : null;
+
+	private static final long SLOW_NANOS = ENABLED ? slowNanos() : Long.MAX_VALUE;
+
+	private static boolean isEnabled() {
+		try {
+			return Boolean.getBoolean(KeycodeStatsMXBean.ENABLED_PROPERTY);
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+	private static long slowNanos() {
+		try {
+			return Long.getLong(KeycodeStatsMXBean.ENABLED_PROPERTY + ".slow", 1000000L);
+		} catch (SecurityException e) {
+			return 1000000L;
+		}
+	}
+
+	// failure to register does not prevent statistics from being gathered
+	private static KeycodeStats register(KeycodeStats stats) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(KeycodeStatsMXBean.OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+			/* statistics are unavailable through JMX */
+		}
+		return stats;
+	}
+
+	// callers must check ENABLED
+	static long start() {
+		return System.nanoTime();
+	}
+
+	// callers must check ENABLED
+	static void parsed(int result, int keyLength, long start) {
+		long nanos = System.nanoTime() - start;
+		STATS.parsed(result, keyLength, nanos);
+		if (result < 0) {
+			ParseEvents.failed(result, nanos);
+		} else if (nanos >= SLOW_NANOS) {
+			ParseEvents.slow(nanos);
+		}
+	}
+
+	// callers must check ENABLED
+	static void encoded() {
+		STATS.encoded();
+	}
+
+	private Instrumentation() { }
+
+}
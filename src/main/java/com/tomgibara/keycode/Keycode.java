@@ -18,15 +18,35 @@ package com.tomgibara.keycode;
 
 import static com.tomgibara.keycode.Encoder.VALUES_32;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
  * Encapsulates 256 bit (32 byte) keys for purpose of parsing & formatting them
  * into ASCII keycodes. The formatted output is designed to provide brevity
  * readability and a degree of human verifiability combined with the support of
- * error detecting codes.
+ * error detecting codes. Formats for keys of other sizes, from 128 to 512 bits,
+ * are available via {@link Format#withKeySize(int)}.
  * <p>
  * Instances of this class are immutable and are designed to be 'cheap' and
  * 'temporary'.
@@ -40,98 +60,369 @@ import java.util.Arrays;
 
 public final class Keycode implements Serializable {
 
-	private static char appendDigits(StringBuilder sb, int block1, int block2, int block3) {
-		int i = sb.length();
-		Encoder.append9Bits(sb, block1);
-		Encoder.append9Bits(sb, block2);
-		Encoder.append6Bits(sb, block3);
-		return TAQG10.compute(sb, i, i + 8);
+	// the check digit for the last row
+	private static char checkDigits(int block1, int block2, int block3) {
+		return TAQG10.compute(Encoder.TRIPLES_9[block1], Encoder.TRIPLES_9[block2], Encoder.PAIRS_6[block3]);
 	}
 	
-	private static String encode(byte[] key) {
-		StringBuilder sb = new StringBuilder();
-		
+	// the number of rows in the keycode of a key of length bytes:
+	// the last two bytes are encoded in the last row and the others in base32 rows of five bytes
+	static int rows(int length) {
+		return (length + 2) / 5 + 1;
+	}
+
+	// writes the 63 characters that encode the 32 bytes of key data at offset and the tag
+	static void encode(byte[] key, int offset, byte tag, char[] chars, int start) {
+		encode(key, offset, 32, tag, chars, start);
+	}
+
+	// writes the characters that encode length bytes of key data at offset and the tag
+	// the final base32 row is padded with zero bits if the key does not fill it
+	static void encode(byte[] key, int offset, int length, byte tag, char[] chars, int start) {
+		if (Instrumentation.ENABLED) Instrumentation.encoded();
+
 		// initial rows
-		for (int i = 0; i < 30; i += 5) {
-			Encoder.appendBytesBase32(sb, key, i);
-			int length = sb.length();
-			sb.append(TAQG32.compute(sb, length - 8, length));
+		int bytes = length - 2;
+		int row = start;
+		for (int i = 0; i < bytes; i += 5, row += 9) {
+			if (i + 5 <= bytes) {
+				Encoder.writeBytesBase32(chars, row, key, offset + i);
+			} else {
+				Encoder.writeBytesBase32(chars, row, key, offset + i, bytes - i);
+			}
+			chars[row + 8] = TAQG32.compute(chars, row, row + 8);
 		}
 		
 		// last row
-		int block1 = ((key[30] & 0xff) << 1) | ((key[31] & 0x80) >> 7);
-		int block2 = ((key[31] & 0x7f) << 2) | ((key[32] & 0xc0) >> 6);
-		int block3 =  (key[32] & 0x3f);
-		char c = appendDigits(sb, block1, block2, block3);
-		char k = sb.charAt(61);
+		encodeLastRow(key[offset + bytes], key[offset + bytes + 1], tag, chars, row);
+	}
+
+	// writes the 9 digits of the last row, which depends only on the last two bytes of the key and the tag
+	static void encodeLastRow(byte key30, byte key31, byte tag, char[] chars, int start) {
+		int block1 = ((key30 & 0xff) << 1) | ((key31 & 0x80) >> 7);
+		int block2 = ((key31 & 0x7f) << 2) | ((tag & 0xc0) >> 6);
+		int block3 =  (tag & 0x3f);
+		char c = checkDigits(block1, block2, block3);
+		char k = (char) (48 + Encoder.PAIRS_6[block3] % 10);
 		if (c == k) {
 			block2 ^= 2; // flip the sign-bit of the tag
-			sb.setLength(54);
-			c = appendDigits(sb, block1, block2, block3);
+			c = checkDigits(block1, block2, block3);
 		}
-		sb.append(c);
-		
-		return sb.toString();
+		Encoder.write9Bits(chars, start    , block1);
+		Encoder.write9Bits(chars, start + 3, block2);
+		Encoder.write6Bits(chars, start + 6, block3);
+		chars[start + 8] = c;
+	}
+
+	// decodes the 63 characters at start into 32 bytes of key data at offset
+	// key may be null, in which case the characters are only validated
+	// returns the tag, or a failure result with a position relative to start
+	// the characters are always decoded from an array so that no access is megamorphic
+	static int decode(char[] chars, int start, byte[] key, int offset) {
+		return decode(chars, start, 32, key, offset);
 	}
 
-	private static byte[] decode(String str) {
+	// decodes the characters at start into length bytes of key data at offset, as above
+	static int decode(char[] chars, int start, int length, byte[] key, int offset) {
+		int bytes = length - 2;
+		// the index of the last row, the methods for which expect it at 54
+		int last = rows(length) * 9 - 9;
+		int shift = last - 54;
+
 		// basic checks
-		if (str.length() == 0) throw new IllegalArgumentException("blank code");
-		if (str.length() < 63) throw new IllegalArgumentException("short code: " + str.length() + " characters");
-		if (str.length() > 63) throw new IllegalArgumentException("long code: " + str.length() + " characters");
-		for (int i = 54; i < 62; i++) { // TODO strengthen
-			char c = str.charAt(i);
-			if (c < 48 || c >= 58) throw new IllegalArgumentException("expected digit at character " + (i+1));
+		for (int i = 0; i < last; i += 9) {
+			char k = chars[start + i + 8];
+			if (Encoder.isBase32(Encoder.loadChars(chars, start + i)) && k < 128 && VALUES_32[k] >= 0) continue;
+			// identify the failing character
+			for (int j = i; j < i + 9; j++) {
+				char c = chars[start + j];
+				if (c >= 128) return Failure.result(Failure.NON_ASCII_CHARACTER, j);
+				if (VALUES_32[c] < 0) return Failure.result(Failure.INVALID_CHARACTER, j);
+			}
 		}
-		if (str.charAt(54) == '0') throw new IllegalArgumentException("invalid zero at first character of last row");
-		if (str.charAt(57) == '0') throw new IllegalArgumentException("invalid zero at fourth character of last row");
-		if (str.charAt(60) == '0') throw new IllegalArgumentException("invalid zero at seventh character of last row");
+		int result = checkLastRow(chars, start + shift);
+		if (result < 0) return Failure.shift(result, shift);
 
 		// checksums
-		for (int i = 0; i < 54; i += 9) {
-			if (!TAQG32.verify(str, i, i + 9)) throw new IllegalArgumentException("invalid checksum for row " + (i / 9 + 1));
+		for (int i = 0; i < last; i += 9) {
+			if (!TAQG32.verify(chars, start + i, start + i + 9)) return Failure.result(Failure.INVALID_CHECKSUM, i);
 		}
-		if (!TAQG10.verify(str, 54, 63)) throw new IllegalArgumentException("invalid checksum for last row");
-		
-		// double digits
-		if (
-				str.charAt(54) == str.charAt(55) ||
-				str.charAt(55) == str.charAt(56) ||
-				str.charAt(57) == str.charAt(58) ||
-				str.charAt(58) == str.charAt(59) ||
-				str.charAt(60) == str.charAt(61) ||
-				str.charAt(61) == str.charAt(62)
-				) {
-			throw new IllegalArgumentException("invalid digit pairs");
+
+		// padding
+		int padded = bytes % 5;
+		if (padded != 0) {
+			int row = last - 9;
+			long bits = Encoder.parseBitsBase32(chars, start + row);
+			// identifies the first character that holds a padding bit
+			if ((bits & (1L << 40 - padded * 8) - 1) != 0L) return Failure.result(Failure.INVALID_PADDING, row + padded * 8 / 5);
 		}
-		
+
+		// last row
+		int tag = decodeLastRow(chars, start + shift, key, offset + length - 32);
+		if (tag < 0) return Failure.shift(tag, shift);
+
 		// parsing
-		byte[] key = new byte[33];
-		for (int i = 0; i < 6; i++) {
-			Encoder.parseBytesBase32(str, i * 9, key, i * 5);
-		}
-		int block1 = Encoder.parse9Bits(str, 54);
-		int block2 = Encoder.parse9Bits(str, 57);
-		int block3 = Encoder.parse6Bits(str, 60);
-		if (block1 >= 512) throw new IllegalArgumentException("invalid first digit triple");
-		if (block2 >= 512) throw new IllegalArgumentException("invalid second digit triple");
-		if (block3 >= 64) throw new IllegalArgumentException("invalid third digit triple");
-		boolean f = (block2 & 2) != 0;
-		if (f) {
+		if (key != null) {
+			for (int i = 0; i < bytes; i += 5) {
+				int row = start + i / 5 * 9;
+				if (i + 5 <= bytes) {
+					Encoder.parseBytesBase32(chars, row, key, offset + i);
+				} else {
+					Encoder.parseBytesBase32(chars, row, key, offset + i, bytes - i);
+				}
+			}
+		}
+
+		// all good - return the tag
+		return tag;
+	}
+
+	// checks that the last row of the 63 characters at start consists of valid digits
+	static int checkLastRow(char[] chars, int start) {
+		for (int i = 54; i < 63; i++) {
+			char c = chars[start + i];
+			if (c >= 128) return Failure.result(Failure.NON_ASCII_CHARACTER, i);
+			if (c < 48 || c >= 58) return Failure.result(Failure.EXPECTED_DIGIT, i);
+		}
+		if (chars[start + 54] == '0') return Failure.result(Failure.INVALID_ZERO, 54);
+		if (chars[start + 57] == '0') return Failure.result(Failure.INVALID_ZERO, 57);
+		if (chars[start + 60] == '0') return Failure.result(Failure.INVALID_ZERO, 60);
+		return 0;
+	}
+
+	// decodes the checked last row of the 63 characters at start into bytes 30 and 31 of the key
+	// returns the tag, or a failure result with a position relative to start
+	static int decodeLastRow(char[] chars, int start, byte[] key, int offset) {
+		if (!TAQG10.verify(chars, start + 54, start + 63)) return Failure.result(Failure.INVALID_CHECKSUM, 54);
+
+		// double digits
+		for (int i = 54; i < 63; i += 3) {
+			if (chars[start + i    ] == chars[start + i + 1]) return Failure.result(Failure.INVALID_DIGIT_PAIR, i    );
+			if (chars[start + i + 1] == chars[start + i + 2]) return Failure.result(Failure.INVALID_DIGIT_PAIR, i + 1);
+		}
+
+		// digit triples
+		int block1 = Encoder.parse9Bits(chars, start + 54);
+		int block2 = Encoder.parse9Bits(chars, start + 57);
+		int block3 = Encoder.parse6Bits(chars, start + 60);
+		if (block1 >= 512) return Failure.result(Failure.INVALID_DIGIT_TRIPLE, 54);
+		if (block2 >= 512) return Failure.result(Failure.INVALID_DIGIT_TRIPLE, 57);
+		if (block3 >= 64) return Failure.result(Failure.INVALID_DIGIT_TRIPLE, 60);
+		if ((block2 & 2) != 0) {
 			block2 &= ~2;
-			StringBuilder sb = new StringBuilder();
-			char c  = appendDigits(sb, block1, block2, block3);
-			char k = sb.charAt(7);
-			if (c != k) throw new IllegalArgumentException("invalid tag bit flip");
+			if (checkDigits(block1, block2, block3) != chars[start + 61]) return Failure.result(Failure.INVALID_TAG_FLIP, 57);
+		}
+
+		if (key != null) {
+			key[offset + 30] = (byte) ( block1 >> 1               );
+			key[offset + 31] = (byte) ( block1 << 7 | block2 >> 2 );
+		}
+		return (block2 << 6 | block3) & 0x7f;
+	}
+
+	// decodes the significant characters gathered from the code of a key of length bytes
+	// returns the tag, or a failure result with a position that indexes the significant characters
+	static int decode(int count, char[] chars, int length, byte[] key, int offset) {
+		int expected = rows(length) * 9;
+		if (count == 0) return Failure.result(Failure.EMPTY_CODE, 0, 0);
+		if (count < expected) return Failure.result(Failure.SHORT_CODE, 0, count);
+		if (count > expected) return Failure.result(Failure.LONG_CODE, 0, expected);
+		return decode(chars, 0, length, key, offset);
+	}
+
+	// eliminates whitespace and checks characters before decoding length bytes of key data
+	// returns the tag, or a failure result with a position that indexes code
+	static int parse(CharSequence code, int length, byte[] key, int offset) {
+		if (!Instrumentation.ENABLED) return parseCode(code, length, key, offset);
+		long start = Instrumentation.start();
+		int result = parseCode(code, length, key, offset);
+		Instrumentation.parsed(result, length, start);
+		return result;
+	}
+
+	private static int parseCode(CharSequence code, int length, byte[] key, int offset) {
+		int expected = rows(length) * 9;
+		int n = code.length();
+		char[] source = new char[n];
+		if (code instanceof String) {
+			((String) code).getChars(0, n, source, 0);
+		} else {
+			for (int i = 0; i < n; i++) {
+				source[i] = code.charAt(i);
+			}
+		}
+		// gathering never overtakes reading, so a code without surplus characters is gathered in place
+		char[] chars = n <= expected ? source : new char[expected];
+		int count = gather(source, 0, n, chars);
+		if (count < 0) return count;
+		int result = decode(count, chars, length, key, offset);
+		return result < 0 ? Failure.relocate(result, code) : result;
+	}
+
+	// copies as many significant characters as chars can hold, checking every character
+	// returns the number of significant characters, or a failure result with a position that indexes the range
+	static int gather(char[] code, int offset, int length, char[] chars) {
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			char c = code[offset + i];
+			if (c >= 128) return Failure.result(Failure.NON_ASCII_CHARACTER, 0, i);
+			int value = VALUES_32[c];
+			if (value == -2) continue;
+			if (value == -1) return Failure.result(Failure.INVALID_CHARACTER, 0, i);
+			if (count < chars.length) chars[count] = c;
+			count++;
+		}
+		return count;
+	}
+
+	// the number of non-whitespace characters in code
+	private static int count(CharSequence code) {
+		int count = 0;
+		for (int i = 0; i < code.length(); i++) {
+			char c = code.charAt(i);
+			if (c >= 128 || VALUES_32[c] != -2) count++;
+		}
+		return count;
+	}
+
+	// the message for a failure to parse the code of a key with the specified number of rows
+	static String message(int result, CharSequence code, int rows) {
+		int position = Failure.position(result) + 1;
+		switch (Failure.of(result)) {
+		case EMPTY_CODE:           return "empty code";
+		case NON_ASCII_CHARACTER:  return "non-ascii character at " + position;
+		case INVALID_CHARACTER:    return "invalid character at " + position;
+		case SHORT_CODE:           return "short code: " + count(code) + " characters";
+		case LONG_CODE:            return "long code: " + count(code) + " characters";
+		case EXPECTED_DIGIT:       return "expected digit at character " + position;
+		case INVALID_ZERO:         return "invalid zero at character " + position;
+		case INVALID_CHECKSUM:
+			int row = Failure.row(result);
+			return row == rows ? "invalid checksum for last row" : "invalid checksum for row " + row;
+		case INVALID_DIGIT_PAIR:   return "invalid digit pair at character " + position;
+		case INVALID_DIGIT_TRIPLE: return "invalid digit triple at character " + position;
+		case INVALID_TAG_FLIP:     return "invalid tag bit flip";
+		case INVALID_PADDING:      return "invalid padding at character " + position;
+		default: throw new IllegalStateException("unexpected failure");
 		}
-		
-		
-		key[30] = (byte) ( block1 >> 1               );
-		key[31] = (byte) ( block1 << 7 | block2 >> 2 );
-		key[32] = (byte) ( block2 << 6 | block3      );
-		
-		// all good - return
-		return key;
+	}
+
+	/**
+	 * <p>
+	 * Identifies why character data failed to parse as a keycode.
+	 * <p>
+	 * The non-throwing methods {@link Format#tryParse(CharSequence, byte[])}
+	 * and {@link Format#validate(CharSequence)} return an integer result which
+	 * is non-negative on success. A negative result encodes a failure, together
+	 * with the position of the character at which it was detected, and the row
+	 * of the keycode in which that character lies; these may be recovered with
+	 * the static methods of this enumeration.
+	 * 
+	 * @author tomgibara
+	 */
+
+	public enum Failure {
+
+		/** The character data was empty. */
+		EMPTY_CODE,
+		/** A character outside the ASCII range was present. */
+		NON_ASCII_CHARACTER,
+		/** An ASCII character that is neither whitespace nor part of the keycode alphabet was present. */
+		INVALID_CHARACTER,
+		/** Too few keycode characters were present. */
+		SHORT_CODE,
+		/** Too many keycode characters were present. */
+		LONG_CODE,
+		/** A character in the last row was not a digit. */
+		EXPECTED_DIGIT,
+		/** A triple in the last row began with a zero. */
+		INVALID_ZERO,
+		/** The checksum for a row did not match. */
+		INVALID_CHECKSUM,
+		/** A triple in the last row contained an adjacent repeated digit. */
+		INVALID_DIGIT_PAIR,
+		/** A triple in the last row encoded a value out of range. */
+		INVALID_DIGIT_TRIPLE,
+		/** The last row indicated a tag bit flip that was not required. */
+		INVALID_TAG_FLIP,
+		/** The bits that pad the last base32 row of a short key were not zero. */
+		INVALID_PADDING;
+
+		private static final Failure[] values = values();
+
+		// positions that cannot be represented are saturated
+		private static final int MAX_POSITION = 0x7fffff;
+
+		static int result(Failure failure, int row, int position) {
+			return ~(failure.ordinal() | row << 4 | Math.min(position, MAX_POSITION) << 8);
+		}
+
+		// for failures at a position within the keycode characters
+		static int result(Failure failure, int position) {
+			return result(failure, position / 9 + 1, position);
+		}
+
+		// moves a failure within the keycode characters by a number of positions
+		static int shift(int result, int positions) {
+			return positions == 0 ? result : result(of(result), position(result) + positions);
+		}
+
+		// maps the position of a failure from the significant characters of a code to the code itself
+		static int relocate(int result, CharSequence code) {
+			int position = position(result);
+			int count = 0;
+			int index = 0;
+			for (; index < code.length(); index++) {
+				char c = code.charAt(index);
+				if (VALUES_32[c] == -2) continue;
+				if (count == position) break;
+				count++;
+			}
+			return result(of(result), row(result), index);
+		}
+
+		/**
+		 * The failure encoded in a result.
+		 * 
+		 * @param result
+		 *            a result returned from parsing or validation
+		 * @return the failure, or null if the result indicates success
+		 */
+
+		public static Failure of(int result) {
+			return result < 0 ? values[~result & 0xf] : null;
+		}
+
+		/**
+		 * The index of the character at which a failure was detected. For
+		 * failures that relate to a triple or a row, this is the index of its
+		 * first character. For short codes it is the length of the character
+		 * data.
+		 * 
+		 * @param result
+		 *            a result returned from parsing or validation
+		 * @return the zero based index of the failing character in the parsed
+		 *         character data, or -1 if the result indicates success
+		 */
+
+		public static int position(int result) {
+			return result < 0 ? ~result >>> 8 : -1;
+		}
+
+		/**
+		 * The row of the keycode in which a failure was detected.
+		 * 
+		 * @param result
+		 *            a result returned from parsing or validation
+		 * @return a row number from 1 to the number of rows in the keycode
+		 *         inclusive (7 for 256 bit keys), or zero if the result
+		 *         indicates success or the failure is not specific to a row
+		 */
+
+		public static int row(int result) {
+			return result < 0 ? (~result >> 4) & 0xf : 0;
+		}
+
 	}
 
 	/**
@@ -154,14 +445,36 @@ public final class Keycode implements Serializable {
 
 		private static final long serialVersionUID = -7846537134506341028L;
 
-		private static final Format PLAIN = new Format("", "");
-		private static final Format STANDARD = new Format(" ", "\n");
-		private static final Format PLATFORM;
-		
-		static {
-			String s = String.format("%n");
-			PLATFORM = s.equals(STANDARD.lineSeparator) ? STANDARD : new Format(" ", s);
+		// the built-in formats are canonical for each key length, keyed by their separators which cannot contain '|';
+		// other formats are not retained, so that they cannot accumulate
+		private static final ConcurrentMap<String, Format> formats = new ConcurrentHashMap<>();
+
+		private static Format canonical(String groupSeparator, String lineSeparator, int keyLength) {
+			if (!isBuiltIn(groupSeparator, lineSeparator)) return new Format(groupSeparator, lineSeparator, keyLength);
+			String key = groupSeparator + '|' + lineSeparator + '|' + keyLength;
+			Format format = formats.get(key);
+			if (format == null) {
+				format = new Format(groupSeparator, lineSeparator, keyLength);
+				Format existing = formats.putIfAbsent(key, format);
+				if (existing != null) format = existing;
+			}
+			return format;
+		}
+
+		// the separators of the plain, standard and platform formats
+		private static boolean isBuiltIn(String groupSeparator, String lineSeparator) {
+			if (groupSeparator.isEmpty()) return lineSeparator.isEmpty();
+			return groupSeparator.equals(" ") && (lineSeparator.equals("\n") || lineSeparator.equals(System.lineSeparator()));
 		}
+
+		// key lengths are whole numbers of words from 128 to 512 bits
+		private static boolean isKeyLength(int keyLength) {
+			return keyLength >= 16 && keyLength <= 64 && (keyLength & 7) == 0;
+		}
+
+		private static final Format PLAIN = canonical("", "", 32);
+		private static final Format STANDARD = canonical(" ", "\n", 32);
+		private static final Format PLATFORM = canonical(" ", String.format("%n"), 32);
 		
 		/**
 		 * With this format, the keycode will not include group separators or
@@ -202,9 +515,9 @@ public final class Keycode implements Serializable {
 		}
 
 		/**
-		 * Creates a new format with the specified group and line separators.
-		 * Separators must only consist of ASCII whitespace, specifically the
-		 * characters: ' ', '\t', '\n', '\r'
+		 * Creates a new format with the specified group and line separators,
+		 * for 256 bit keys. Separators must only consist of ASCII whitespace,
+		 * specifically the characters: ' ', '\t', '\n', '\r'
 		 * 
 		 * @param groupSeparator
 		 *            the characters inserted between groups
@@ -218,16 +531,61 @@ public final class Keycode implements Serializable {
 			if (!isWhitespaceOnly(groupSeparator)) throw new IllegalArgumentException("non-whitespace groupSeparator");
 			if (lineSeparator == null) throw new IllegalArgumentException("null lineSeparator");
 			if (!isWhitespaceOnly(lineSeparator)) throw new IllegalArgumentException("non-whitespace lineSeparator");
-			//TODO canonicalize against standard formats?
-			return new Format(groupSeparator, lineSeparator);
+			return canonical(groupSeparator, lineSeparator, 32);
 		}
 		
 		final String groupSeparator;
 		final String lineSeparator;
+		// the number of bytes in a key, absent from formats serialized before other key sizes were supported
+		final int keyLength;
+
+		// the number of rows in a keycode and the number of characters they contain
+		final transient int rows;
+		final transient int codeChars;
+
+		// the render plan, compiled once for each format:
+		// a formatted keycode with its separators in place, awaiting the code characters
+		private final transient char[] template;
+		// pairs of code index and template offset for each contiguous run of code characters
+		private final transient int[] runs;
+		// the template offset of each code character
+		private final transient int[] positions;
 		
-		private Format(String groupSeparator, String lineSeparator) {
+		private Format(String groupSeparator, String lineSeparator, int keyLength) {
 			this.groupSeparator = groupSeparator;
 			this.lineSeparator = lineSeparator;
+			this.keyLength = keyLength;
+			rows = Keycode.rows(keyLength);
+			codeChars = rows * 9;
+
+			int groupLength = groupSeparator.length();
+			int lineLength = lineSeparator.length();
+			char[] template = new char[codeChars + 2 * rows * groupLength + (rows - 1) * lineLength];
+			int[] runs = new int[6 * rows];
+			int count = 0;
+			int offset = 0;
+			for (int group = 0; group < 3 * rows; group++) {
+				if (group > 0) {
+					String separator = group % 3 == 0 ? lineSeparator : groupSeparator;
+					separator.getChars(0, separator.length(), template, offset);
+					offset += separator.length();
+				}
+				// groups that are not separated extend the previous run
+				if (count == 0 || runs[count - 1] + group * 3 - runs[count - 2] != offset) {
+					runs[count++] = group * 3;
+					runs[count++] = offset;
+				}
+				offset += 3;
+			}
+			this.template = template;
+			this.runs = count == runs.length ? runs : Arrays.copyOf(runs, count);
+			positions = new int[codeChars];
+			for (int i = 0; i < count; i += 2) {
+				int end = i + 2 == count ? codeChars : runs[i + 2];
+				for (int j = runs[i]; j < end; j++) {
+					positions[j] = runs[i + 1] + j - runs[i];
+				}
+			}
 		}
 
 		public String getGroupSeparator() {
@@ -239,61 +597,300 @@ public final class Keycode implements Serializable {
 		}
 
 		/**
-		 * Encapsulates a 256 bit key for subsequent output as a keycode via the
+		 * The size of the keys that are encoded by this format. Keycodes for
+		 * 256 bit keys have seven rows; keycodes for other sizes have the
+		 * same rows, but more or fewer of them.
+		 * 
+		 * @return the size of keys in bits
+		 * @see #withKeySize(int)
+		 */
+
+		public int getKeySize() {
+			return keyLength * 8;
+		}
+
+		/**
+		 * The number of rows in a keycode of this format, including the last
+		 * row of digits. Each row contains nine characters.
+		 * 
+		 * @return the number of rows, 7 for 256 bit keys
+		 */
+
+		public int getRowCount() {
+			return rows;
+		}
+
+		/**
+		 * <p>
+		 * A format with the separators of this format for keys of the
+		 * specified size, which must be a multiple of 64 bits from 128 to 512
+		 * bits inclusive.
+		 * <p>
+		 * The last two bytes of the key are encoded with the tag in the last
+		 * row of digits, as they are for 256 bit keys. The other bytes are
+		 * encoded in base32 rows of five bytes; where the bytes do not fill
+		 * the final base32 row, it is padded with zero bits. So for example,
+		 * 128 bit keys are encoded in four rows and 512 bit keys in fourteen.
+		 * Keycodes of different sizes cannot be parsed by each other's
+		 * formats.
+		 * 
+		 * @param keySize
+		 *            the size of keys in bits
+		 * @throws IllegalArgumentException
+		 *             if the key size is not supported
+		 * @return a format for keys of the specified size
+		 */
+
+		public Format withKeySize(int keySize) {
+			if ((keySize & 7) != 0 || !isKeyLength(keySize / 8)) throw new IllegalArgumentException("unsupported keySize");
+			return canonical(groupSeparator, lineSeparator, keySize / 8);
+		}
+
+		/**
+		 * The number of characters in any keycode that is output with this
+		 * format.
+		 * 
+		 * @return the length of formatted keycodes
+		 */
+
+		public int getCodeLength() {
+			return template.length;
+		}
+
+		/**
+		 * Encapsulates a key for subsequent output as a keycode via the
 		 * {@link #Keycode.toString()} method. The tag is implicitly assumed to
 		 * be zero.
 		 * 
 		 * @param key
-		 *            a 32 byte array containing key data
+		 *            an array containing key data, 32 bytes long unless the
+		 *            format has a different key size
 		 * @throws IllegalArgumentException
-		 *             if the array is not 32 bytes long
+		 *             if the array length does not match the key size
 		 */
 		
 		public Keycode keycode(byte[] key) {
 			if (key == null) throw new IllegalArgumentException("null key");
-			if (key.length != 32) throw new IllegalArgumentException("invalid key length");
-			byte[] copy = new byte[33];
-			System.arraycopy(key, 0, copy, 0, 32);
-			return new Keycode(this, copy, encode(copy));
+			if (key.length != keyLength) throw new IllegalArgumentException("invalid key length");
+			return new Keycode(this, key, 0, (byte) 0, null);
 		}
 
 		/**
-		 * Encapsulates a 256 bit key for subsequent output as a keycode,
-		 * together with a 7 bit tag which is also encoded along with the key.
-		 * The tag must be non-negative, that is, only the most-significant-bit
-		 * must be zero.
+		 * Encapsulates a key for subsequent output as a keycode, together with
+		 * a 7 bit tag which is also encoded along with the key. The tag must
+		 * be non-negative, that is, only the most-significant-bit must be
+		 * zero.
 		 * 
 		 * @param key
-		 *            a 32 byte array containing key data
+		 *            an array containing key data, 32 bytes long unless the
+		 *            format has a different key size
 		 * @param tag
 		 *            a 7 bit value that augments the key data
 		 * @throws IllegalArgumentException
-		 *             if the array is not 32 bytes long
+		 *             if the array length does not match the key size
 		 * @see #getTag()
 		 */
 
 		public Keycode keycode(byte[] key, byte tag) {
 			if (key == null) throw new IllegalArgumentException("null key");
-			if (key.length != 32) throw new IllegalArgumentException("invalid key length");
+			if (key.length != keyLength) throw new IllegalArgumentException("invalid key length");
 			if (tag < 0) throw new IllegalArgumentException("negative tag");
-			byte[] copy = new byte[33];
-			System.arraycopy(key, 0, copy, 0, 32);
-			copy[32] = tag;
-			return new Keycode(this, copy, encode(copy));
+			return new Keycode(this, key, 0, tag, null);
 		}
 		
+		/**
+		 * Writes a key, together with a 7 bit tag, directly into a character
+		 * array as a keycode in this format. The array must have
+		 * space for {@link #getCodeLength()} characters at the specified
+		 * index. No intermediate objects are created.
+		 * 
+		 * @param key
+		 *            an array containing key data
+		 * @param offset
+		 *            the index at which the key data starts
+		 * @param tag
+		 *            a 7 bit value that augments the key data
+		 * @param chars
+		 *            the array into which the keycode is written
+		 * @param start
+		 *            the index at which the keycode will start in the array
+		 * @throws IllegalArgumentException
+		 *             if the key array does not contain a whole key at the
+		 *             offset, if the tag is negative, or if the character
+		 *             array cannot accommodate the keycode
+		 * @return the number of characters written
+		 */
+
+		public int encodeTo(byte[] key, int offset, byte tag, char[] chars, int start) {
+			if (key == null) throw new IllegalArgumentException("null key");
+			if (offset < 0) throw new IllegalArgumentException("negative offset");
+			if (offset + keyLength > key.length) throw new IllegalArgumentException("insufficient key data");
+			if (tag < 0) throw new IllegalArgumentException("negative tag");
+			if (chars == null) throw new IllegalArgumentException("null chars");
+			if (start < 0) throw new IllegalArgumentException("negative start");
+			int length = getCodeLength();
+			if (start + length > chars.length) throw new IllegalArgumentException("insufficient space for keycode");
+			encode(key, offset, keyLength, tag, chars, start);
+			spread(chars, start);
+			return length;
+		}
+
+		/**
+		 * <p>
+		 * The last row of the keycode for a key and tag, in this format. The
+		 * last row consists of three groups of digits, and is determined only
+		 * by the last two bytes of the key and the tag, so it is computed
+		 * without encoding the other rows.
+		 * <p>
+		 * Because the last row is easily read aloud, it may be used to
+		 * partially verify a key; {@link LastRowIndex} can be used to find
+		 * the keys that match a last row.
+		 * 
+		 * @param key
+		 *            an array containing key data, 32 bytes long unless the
+		 *            format has a different key size
+		 * @param tag
+		 *            a 7 bit value that augments the key data
+		 * @throws IllegalArgumentException
+		 *             if the array length does not match the key size or the
+		 *             tag is negative
+		 * @return the digits of the last row, separated into groups
+		 */
+
+		public String lastRow(byte[] key, byte tag) {
+			if (key == null) throw new IllegalArgumentException("null key");
+			if (key.length != keyLength) throw new IllegalArgumentException("invalid key length");
+			if (tag < 0) throw new IllegalArgumentException("negative tag");
+			return lastRow(key[keyLength - 2], key[keyLength - 1], tag);
+		}
+
+		// the bytes are the last two of the key, whatever its length
+		String lastRow(byte key30, byte key31, byte tag) {
+			int groupLength = groupSeparator.length();
+			char[] chars = new char[9 + 2 * groupLength];
+			encodeLastRow(key30, key31, tag, chars, 0);
+			if (groupLength > 0) {
+				System.arraycopy(chars, 6, chars, 6 + 2 * groupLength, 3);
+				System.arraycopy(chars, 3, chars, 3 + groupLength, 3);
+				groupSeparator.getChars(0, groupLength, chars, 3);
+				groupSeparator.getChars(0, groupLength, chars, 6 + groupLength);
+			}
+			return new String(chars);
+		}
+
+		/**
+		 * Creates a codec that reuses its internal buffers to write keycodes
+		 * in this format. Codecs are not threadsafe, they are intended to be
+		 * retained and reused by a single thread.
+		 * 
+		 * @return a new codec for this format
+		 */
+
+		public KeycodeCodec codec() {
+			return new KeycodeCodec(this);
+		}
+
+		/**
+		 * Creates a parser that validates a keycode incrementally, as its
+		 * characters are entered. Parsers are not threadsafe.
+		 * 
+		 * @throws IllegalStateException
+		 *             if the format is not for 256 bit keys
+		 * @return a new parser for this format
+		 * @see KeycodeParser
+		 */
+
+		public KeycodeParser parser() {
+			checkKeyLength();
+			return new KeycodeParser(this);
+		}
+
+		/**
+		 * Creates a reader that parses consecutive keycodes from a stream of
+		 * characters. Keycodes in the stream may be in any format and are
+		 * returned with this format.
+		 * 
+		 * @param reader
+		 *            the source of the characters
+		 * @return a new reader of keycodes
+		 * @see KeycodeReader
+		 */
+
+		public KeycodeReader reader(Reader reader) {
+			if (reader == null) throw new IllegalArgumentException("null reader");
+			return new KeycodeReader(this, reader);
+		}
+
+		/**
+		 * Creates a writer that writes keycodes to a stream of characters in
+		 * this format.
+		 * 
+		 * @param writer
+		 *            the destination of the characters
+		 * @return a new writer of keycodes
+		 * @see KeycodeWriter
+		 */
+
+		public KeycodeWriter writer(Writer writer) {
+			if (writer == null) throw new IllegalArgumentException("null writer");
+			return new KeycodeWriter(this, writer);
+		}
+
 		/**
 		 * Returns a keycode with the same key and tag as an existing keycode,
 		 * 
 		 * @param an existing keycode
+		 * @throws IllegalArgumentException
+		 *             if the keycode has a different key size
 		 * @return the same key combined with this format.
 		 */
 
 		public Keycode keycode(Keycode keycode) {
 			if (keycode == null) throw new IllegalArgumentException("null keycode");
-			return keycode.format.equals(this) ? keycode : new Keycode(this, keycode.key, keycode.code);
+			if (keycode.format.keyLength != keyLength) throw new IllegalArgumentException("mismatched key size");
+			return keycode.format.equals(this) ? keycode : new Keycode(this, keycode);
 		}
 		
+		/**
+		 * Creates a cache that parses keycodes with this format, retaining up
+		 * to the specified number of the most recently parsed keycodes. The
+		 * cache is threadsafe and is intended for applications in which the
+		 * same codes are parsed repeatedly.
+		 * 
+		 * @param maxEntries
+		 *            the maximum number of keycodes retained by the cache
+		 * @throws IllegalArgumentException
+		 *             if maxEntries is not positive
+		 * @return a new, empty cache
+		 * @see KeycodeCache
+		 */
+
+		public KeycodeCache cached(int maxEntries) {
+			if (maxEntries <= 0) throw new IllegalArgumentException("non-positive maxEntries");
+			return new KeycodeCache(this, maxEntries);
+		}
+
+		/**
+		 * Creates a batch of keys that can be encoded into, or decoded from, a
+		 * single contiguous buffer of keycode characters. Keycodes obtained
+		 * from the batch will have this format.
+		 * 
+		 * @param size
+		 *            the number of keys in the batch
+		 * @throws IllegalArgumentException
+		 *             if the size is negative
+		 * @throws IllegalStateException
+		 *             if the format is not for 256 bit keys
+		 * @return a new batch of zeroed keys
+		 * @see KeycodeBatch
+		 */
+
+		public KeycodeBatch batch(int size) {
+			if (size < 0) throw new IllegalArgumentException("negative size");
+			checkKeyLength();
+			return new KeycodeBatch(this, size);
+		}
+
 		/**
 		 * <p>
 		 * Parses a keycode from character data.
@@ -313,46 +910,558 @@ public final class Keycode implements Serializable {
 		
 		public Keycode parse(CharSequence code) {
 			if (code == null) throw new IllegalArgumentException("null code");
-			if (code.length() == 0) throw new IllegalArgumentException("empty code");
-			
-			// eliminate whitespace and check characters
-			StringBuilder sb = null;
-			int last = 0;
-			int codeLength = code.length();
-			for (int i = 0; i < codeLength; i++) {
-				char c = code.charAt(i);
-				if (c >= 128) throw new IllegalArgumentException("non-ascii character at " + (i + 1));
-				int value = VALUES_32[c];
-				switch (value) {
-				case -2:
-					if (last != i) {
-						if (sb == null) sb = new StringBuilder(63);
-						sb.append(code, last, i);
+
+			// convert to a String so that the characters checked are those retained
+			return parseChars(code.toString());
+		}
+
+		/**
+		 * Parses a keycode from a string. This is equivalent to
+		 * {@link #parse(CharSequence)} but reads the characters of the string
+		 * directly.
+		 * 
+		 * @param code
+		 *            the characters of the code
+		 * @throws IllegalArgumentException
+		 *             if the code contains non-whitespace, non-code characters
+		 *             OR has an invalid structure OR a data error is detected
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parse(String code) {
+			if (code == null) throw new IllegalArgumentException("null code");
+			return parseChars(code);
+		}
+
+		/**
+		 * Parses a keycode from a range of characters in an array, reading
+		 * the array directly. Whitespace is treated exactly as it is by
+		 * {@link #parse(CharSequence)}.
+		 * 
+		 * @param chars
+		 *            an array containing the characters of the code
+		 * @param offset
+		 *            the index of the first character of the code
+		 * @param length
+		 *            the number of characters in the code
+		 * @throws IllegalArgumentException
+		 *             if the range is not within the array or the characters
+		 *             do not contain a valid keycode
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parse(char[] chars, int offset, int length) {
+			if (chars == null) throw new IllegalArgumentException("null chars");
+			if (offset < 0) throw new IllegalArgumentException("negative offset");
+			if (length < 0) throw new IllegalArgumentException("negative length");
+			if (offset + length > chars.length) throw new IllegalArgumentException("insufficient chars");
+			char[] gathered = new char[codeChars];
+			if (Keycode.gather(chars, offset, length, gathered) == codeChars) {
+				Keycode keycode = decodeGathered(gathered);
+				if (keycode != null) return keycode;
+			}
+			return parseChars(CharBuffer.wrap(chars, offset, length));
+		}
+
+		/**
+		 * Parses a keycode from the characters remaining in a buffer. The
+		 * position of the buffer is not changed, so this is equivalent to
+		 * {@link #parse(CharSequence)}, but the backing array of the buffer is
+		 * read directly when it is accessible.
+		 * 
+		 * @param chars
+		 *            a buffer containing the characters of the code
+		 * @throws IllegalArgumentException
+		 *             if the characters do not contain a valid keycode
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parse(CharBuffer chars) {
+			if (chars == null) throw new IllegalArgumentException("null chars");
+			if (chars.hasArray()) return parse(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+			return parseChars(chars);
+		}
+
+		/**
+		 * <p>
+		 * Parses a keycode from character data that is expected to be laid out
+		 * exactly as this format outputs keycodes, as is typical for keycodes
+		 * that have been generated by software. The separators are checked at
+		 * their fixed positions and the code characters are then decoded in
+		 * place, without first being copied.
+		 * <p>
+		 * If the character data is not laid out in this format, or does not
+		 * contain a valid keycode, it is parsed exactly as it is by
+		 * {@link #parse(CharSequence)}, so this method accepts and rejects
+		 * the same codes.
+		 * 
+		 * @param code
+		 *            the character data of the code, typically a String
+		 * @throws IllegalArgumentException
+		 *             if the code contains non-whitespace, non-code characters
+		 *             OR has an invalid structure OR a data error is detected
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parseStrict(CharSequence code) {
+			if (code == null) throw new IllegalArgumentException("null code");
+			if (code.length() == template.length && isLaidOut(code)) {
+				char[] chars = new char[codeChars];
+				if (code instanceof String) {
+					// copy each run of code characters in one operation
+					String str = (String) code;
+					int end = codeChars;
+					for (int i = runs.length - 2; i >= 0; i -= 2) {
+						int from = runs[i];
+						int offset = runs[i + 1];
+						str.getChars(offset, offset + end - from, chars, from);
+						end = from;
 					}
-					last = i + 1;
-					continue;
-				case -1: throw new IllegalArgumentException("invalid character at " + (i + 1));
-				default: continue;
+				} else {
+					for (int i = 0; i < codeChars; i++) {
+						chars[i] = code.charAt(positions[i]);
+					}
+				}
+				Keycode keycode = decodeGathered(chars);
+				if (keycode != null) return keycode;
+			}
+			return parse(code);
+		}
+
+		// whether the separators of the template are present in the code, which has the length of the template
+		private boolean isLaidOut(CharSequence code) {
+			for (int i = 2; i < runs.length; i += 2) {
+				int gap = runs[i - 1] + runs[i] - runs[i - 2];
+				for (int j = gap; j < runs[i + 1]; j++) {
+					if (code.charAt(j) != template[j]) return false;
 				}
 			}
-			
-			// convert to a String and decode
-			//note: risk that char sequence will not return same characters that were checked
-			String str = sb == null ? code.toString() : sb.append(code, last, codeLength).toString();
-			byte[] key = decode(str);
+			return true;
+		}
+
+		/**
+		 * Parses a keycode from ASCII bytes, without first decoding them into
+		 * characters. All of the bytes remaining in the buffer are parsed, and
+		 * on success, the position of the buffer is advanced to its limit.
+		 * Whitespace is treated exactly as it is by
+		 * {@link #parse(CharSequence)}. Both heap and direct buffers are
+		 * supported.
+		 * 
+		 * @param bytes
+		 *            a buffer containing the ASCII bytes of the code
+		 * @throws IllegalArgumentException
+		 *             if the bytes do not contain a valid keycode
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parse(ByteBuffer bytes) {
+			if (bytes == null) throw new IllegalArgumentException("null bytes");
+			int position = bytes.position();
+			Keycode keycode = parseBytes(bytes, position, bytes.limit() - position);
+			// cast avoids binding to the covariant override added in Java 9
+			((Buffer) bytes).position(bytes.limit());
+			return keycode;
+		}
+
+		/**
+		 * Parses a keycode from a range of ASCII bytes, without first decoding
+		 * them into characters. Whitespace is treated exactly as it is by
+		 * {@link #parse(CharSequence)}.
+		 * 
+		 * @param bytes
+		 *            an array containing the ASCII bytes of the code
+		 * @param offset
+		 *            the index of the first byte of the code
+		 * @param length
+		 *            the number of bytes in the code
+		 * @throws IllegalArgumentException
+		 *             if the range is not within the array or the bytes do not
+		 *             contain a valid keycode
+		 * @return a successfully parsed keycode with this format
+		 * @see #parse(CharSequence)
+		 */
+
+		public Keycode parse(byte[] bytes, int offset, int length) {
+			if (bytes == null) throw new IllegalArgumentException("null bytes");
+			if (offset < 0) throw new IllegalArgumentException("negative offset");
+			if (length < 0) throw new IllegalArgumentException("negative length");
+			if (offset + length > bytes.length) throw new IllegalArgumentException("insufficient bytes");
+			return parseBytes(ByteBuffer.wrap(bytes), offset, length);
+		}
+
+		// gathers the significant characters directly into an array
+		// failures are reparsed as characters to report them consistently
+		private Keycode parseBytes(ByteBuffer bytes, int start, int length) {
+			char[] chars = new char[codeChars];
+			int count = 0;
+			for (int i = 0; i < length; i++) {
+				int c = bytes.get(start + i) & 0xff;
+				if (c >= 128) { count = -1; break; }
+				int value = VALUES_32[c];
+				if (value == -2) continue;
+				if (value == -1 || count == codeChars) { count = -1; break; }
+				chars[count++] = (char) c;
+			}
+			if (count == codeChars) {
+				Keycode keycode = decodeGathered(chars);
+				if (keycode != null) return keycode;
+			}
+			return parseChars(new AsciiChars(bytes, start, length));
+		}
+
+		// decodes the gathered code characters, returning null on failure so that the code can be reparsed to report it
+		private Keycode decodeGathered(char[] chars) {
+			long started = Instrumentation.ENABLED ? Instrumentation.start() : 0L;
+			byte[] key = new byte[keyLength];
+			int result = Keycode.decode(chars, 0, keyLength, key, 0);
+			// failures are recorded when they are reparsed
+			if (result < 0) return null;
+			if (Instrumentation.ENABLED) Instrumentation.parsed(result, keyLength, started);
+			return new Keycode(this, key, 0, (byte) result, null);
+		}
+
+		private Keycode parseChars(CharSequence chars) {
+			byte[] key = new byte[keyLength];
+			int result = Keycode.parse(chars, keyLength, key, 0);
+			if (result < 0) throw new IllegalArgumentException(message(result, chars, rows));
 
 			// done
-			return new Keycode(this, key, str);
+			return new Keycode(this, key, 0, (byte) result, null);
+		}
+
+		// parses without raising an exception, recording the message of any failure
+		Keycode parse(String str, String[] failures, int index) {
+			byte[] key = new byte[keyLength];
+			int result = Keycode.parse(str, keyLength, key, 0);
+			if (result < 0) {
+				failures[index] = message(result, str, rows);
+				return null;
+			}
+			return new Keycode(this, key, 0, (byte) result, null);
+		}
+
+		/**
+		 * <p>
+		 * Suggests corrections for character data which fails to parse as a
+		 * keycode because of a single erroneous character or a single swap of
+		 * adjacent characters; whitespace is disregarded. Every correction
+		 * that is returned yields a valid keycode with this format.
+		 * <p>
+		 * Corrections are computed directly from the checksum of the invalid
+		 * row and are ranked by likelihood: replacements for characters that
+		 * are not in the keycode alphabet first, then transpositions, then
+		 * substitutions of easily confused characters, and then other
+		 * substitutions. Note that any substitution in a base32 row can be
+		 * corrected in nine different ways, so the ranking is only a guide.
+		 * 
+		 * @param code
+		 *            the character data of an invalid code
+		 * @throws IllegalStateException
+		 *             if the format is not for 256 bit keys
+		 * @return the ranked corrections, empty if the code is valid, or if
+		 *         it cannot be corrected by changing a single character or
+		 *         swapping a single pair
+		 */
+
+		public List<Correction> suggestCorrections(CharSequence code) {
+			if (code == null) throw new IllegalArgumentException("null code");
+			checkKeyLength();
+			return Corrector.suggest(this, code);
+		}
+
+		/**
+		 * <p>
+		 * Lists every valid keycode that matches a pattern in which unknown
+		 * characters are marked with {@code '?'}. Whitespace is disregarded,
+		 * so the pattern may be in any format, but it must otherwise consist
+		 * of exactly 63 characters of which the known characters must be
+		 * valid for their positions.
+		 * <p>
+		 * Each unknown character in a row after the first multiplies the
+		 * number of matches by 32 (or by around 10 in the last row), though
+		 * the checksums ensure that a single unknown in each row can always be
+		 * recovered uniquely. Patterns that match more than 2^20 keycodes are
+		 * rejected; {@link #recover(CharSequence, int)} can be used to obtain
+		 * only the first matches of such a pattern.
+		 * 
+		 * @param pattern
+		 *            the character data of a code, with unknown characters
+		 * @throws IllegalArgumentException
+		 *             if the pattern does not have 63 significant characters,
+		 *             or contains an invalid character, or matches more than
+		 *             2^20 keycodes
+		 * @throws IllegalStateException
+		 *             if the format is not for 256 bit keys
+		 * @return the matching keycodes with this format, in a consistent
+		 *         order
+		 */
+
+		public List<Keycode> recover(CharSequence pattern) {
+			if (pattern == null) throw new IllegalArgumentException("null pattern");
+			checkKeyLength();
+			return Recovery.recover(this, pattern);
+		}
+
+		/**
+		 * Lists the valid keycodes that match a pattern in which unknown
+		 * characters are marked with {@code '?'}, returning no more than the
+		 * specified number of keycodes.
+		 * 
+		 * @param pattern
+		 *            the character data of a code, with unknown characters
+		 * @param limit
+		 *            the maximum number of keycodes to return
+		 * @throws IllegalArgumentException
+		 *             if the pattern does not have 63 significant characters,
+		 *             or contains an invalid character, or the limit is
+		 *             negative
+		 * @throws IllegalStateException
+		 *             if the format is not for 256 bit keys
+		 * @return the first matching keycodes with this format
+		 * @see #recover(CharSequence)
+		 */
+
+		public List<Keycode> recover(CharSequence pattern, int limit) {
+			if (pattern == null) throw new IllegalArgumentException("null pattern");
+			if (limit < 0) throw new IllegalArgumentException("negative limit");
+			checkKeyLength();
+			return Recovery.recover(this, pattern, limit);
+		}
+
+		/**
+		 * <p>
+		 * Parses every keycode in a sequence of characters, in parallel. The
+		 * sequence is divided into codes of 63 non-whitespace characters
+		 * (nine for each row of the format's keycodes); any
+		 * whitespace may appear within and between codes, so the sequence may
+		 * contain keycodes in any format, one per line for example. Each code
+		 * is parsed as if by {@link #parse(CharSequence)} but failures are
+		 * recorded rather than raised.
+		 * <p>
+		 * Codes are parsed using fork/join tasks; if this method is called
+		 * from within a {@link java.util.concurrent.ForkJoinPool} then that
+		 * pool is used.
+		 * 
+		 * @param codes
+		 *            the characters of any number of keycodes
+		 * @return the keycodes and failures, in the order of the codes
+		 */
+
+		public ParsedKeycodes parseAll(CharSequence codes) {
+			if (codes == null) throw new IllegalArgumentException("null codes");
+			return ParallelCodec.parseAll(this, codes);
+		}
+
+		/**
+		 * Parses a list of codes in parallel. Each code is parsed as if by
+		 * {@link #parse(CharSequence)} but failures are recorded rather than
+		 * raised.
+		 * 
+		 * @param codes
+		 *            the character data of each code, typically Strings
+		 * @throws IllegalArgumentException
+		 *             if any code is null
+		 * @return the keycodes and failures, in the order of the codes
+		 * @see #parseAll(CharSequence)
+		 */
+
+		public ParsedKeycodes parseAll(List<? extends CharSequence> codes) {
+			if (codes == null) throw new IllegalArgumentException("null codes");
+			return ParallelCodec.parseAll(this, codes);
+		}
+
+		/**
+		 * Encapsulates a list of keys as keycodes with this format, in
+		 * parallel. Unlike {@link #keycode(byte[])}, the keycodes are encoded
+		 * immediately, so their strings are available without further work.
+		 * Tags are assumed to be zero.
+		 * 
+		 * @param keys
+		 *            a list of arrays containing key data, 32 bytes long
+		 *            unless the format has a different key size
+		 * @throws IllegalArgumentException
+		 *             if any array is null or does not match the key size
+		 * @return an unmodifiable list of keycodes in the order of the keys
+		 * @see #keycode(byte[])
+		 */
+
+		public List<Keycode> encodeAll(List<byte[]> keys) {
+			if (keys == null) throw new IllegalArgumentException("null keys");
+			return ParallelCodec.encodeAll(this, keys);
+		}
+
+		/**
+		 * <p>
+		 * Parses a keycode from character data without raising an exception
+		 * if the data is not a valid keycode. Parsing is performed in the same
+		 * way as {@link #parse(CharSequence)}.
+		 * <p>
+		 * A non-negative return value indicates that parsing was successful;
+		 * the key data will have been written into the supplied array and the
+		 * value returned is the tag. A negative return value indicates that
+		 * parsing failed, the details of which can be obtained via the static
+		 * methods of {@link Failure}. In this case the supplied array is
+		 * unmodified.
+		 * 
+		 * @param code
+		 *            the character data of the code, typically a String
+		 * @param key
+		 *            an array into which the key data is written, 32 bytes
+		 *            long unless the format has a different key size
+		 * @throws IllegalArgumentException
+		 *             if the array length does not match the key size
+		 * @return the tag, or a negative value if parsing failed
+		 */
+
+		public int tryParse(CharSequence code, byte[] key) {
+			if (code == null) throw new IllegalArgumentException("null code");
+			if (key == null) throw new IllegalArgumentException("null key");
+			if (key.length != keyLength) throw new IllegalArgumentException("invalid key length");
+			return Keycode.parse(code, keyLength, key, 0);
+		}
+
+		/**
+		 * Checks the structure and checksums of a keycode without decoding
+		 * any key data. Character data that validates will parse successfully.
+		 * 
+		 * @param code
+		 *            the character data of the code, typically a String
+		 * @return a non-negative value if the code is valid, or a negative
+		 *         value that identifies the {@link Failure}
+		 * @see #tryParse(CharSequence, byte[])
+		 */
+
+		public int validate(CharSequence code) {
+			if (code == null) throw new IllegalArgumentException("null code");
+			return Keycode.parse(code, keyLength, null, 0);
+		}
+
+		// the longest separator accepted by readCompact, which reads untrusted data
+		static final int MAX_COMPACT_SEPARATOR = 16;
+
+		// writes the compact form of this format, used by serialized keycodes and keycode streams:
+		// the key length, then 0 for no separators, 1 for the standard separators, or 2 followed by the separators
+		void writeCompact(DataOutput out) throws IOException {
+			checkCompact();
+			out.writeByte(keyLength);
+			if (groupSeparator.isEmpty() && lineSeparator.isEmpty()) {
+				out.writeByte(0);
+			} else if (groupSeparator.equals(" ") && lineSeparator.equals("\n")) {
+				out.writeByte(1);
+			} else {
+				out.writeByte(2);
+				out.writeUTF(groupSeparator);
+				out.writeUTF(lineSeparator);
+			}
+		}
+
+		// formats with longer separators could not be read back, so they are rejected before anything is written
+		void checkCompact() throws InvalidObjectException {
+			if (groupSeparator.length() > MAX_COMPACT_SEPARATOR || lineSeparator.length() > MAX_COMPACT_SEPARATOR) throw new InvalidObjectException("long separator");
+		}
+
+		static Format readCompact(DataInput in) throws IOException {
+			int keyLength = in.readUnsignedByte();
+			if (!isKeyLength(keyLength)) throw new StreamCorruptedException("invalid keyLength");
+			switch (in.readUnsignedByte()) {
+			case 0: return canonical("", "", keyLength);
+			case 1: return canonical(" ", "\n", keyLength);
+			case 2:
+				String groupSeparator = readSeparator(in);
+				String lineSeparator = readSeparator(in);
+				if (!isWhitespaceOnly(groupSeparator)) throw new StreamCorruptedException("invalid groupSeparator");
+				if (!isWhitespaceOnly(lineSeparator)) throw new StreamCorruptedException("invalid lineSeparator");
+				return canonical(groupSeparator, lineSeparator, keyLength);
+			default: throw new StreamCorruptedException("invalid format");
+			}
+		}
+
+		// reads a separator written with writeUTF, which is ASCII if it is valid, without reading an oversized one
+		private static String readSeparator(DataInput in) throws IOException {
+			int length = in.readUnsignedShort();
+			if (length > MAX_COMPACT_SEPARATOR) throw new StreamCorruptedException("long separator");
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (bytes[i] & 0xff);
+			}
+			return new String(chars);
+		}
+
+		// the methods that are implemented only for 256 bit keys
+		void checkKeyLength() {
+			if (keyLength != 32) throw new IllegalStateException("unsupported key size");
+		}
+
+		// fills the template with the characters of a code
+		String render(String code) {
+			if (runs.length == 2) return code;
+			char[] chars = template.clone();
+			int end = codeChars;
+			for (int i = runs.length - 2; i >= 0; i -= 2) {
+				int from = runs[i];
+				code.getChars(from, end, chars, runs[i + 1]);
+				end = from;
+			}
+			return new String(chars);
+		}
+
+		// inserts separators into the contiguous code characters at start,
+		// moving the last run first so that no character is overwritten before it is moved
+		void spread(char[] chars, int start) {
+			if (runs.length == 2) return;
+			int end = codeChars;
+			for (int i = runs.length - 2; i >= 0; i -= 2) {
+				int from = runs[i];
+				System.arraycopy(chars, start + from, chars, start + runs[i + 1], end - from);
+				end = from;
+			}
+			// the separators lie between the runs
+			for (int i = 2; i < runs.length; i += 2) {
+				int gap = runs[i - 1] + runs[i] - runs[i - 2];
+				System.arraycopy(template, gap, chars, start + gap, runs[i + 1] - gap);
+			}
+		}
+
+		// appends the code a run at a time, with the separators that lie between the runs in the template
+		void appendTo(Appendable out, String code) throws IOException {
+			for (int i = 0; i < runs.length; i += 2) {
+				if (i > 0) {
+					int gap = runs[i - 1] + runs[i] - runs[i - 2];
+					append(out, template, gap, runs[i + 1]);
+				}
+				append(out, code, runs[i], i + 2 == runs.length ? codeChars : runs[i + 2]);
+			}
+		}
+
+		// puts the code into a buffer as appendTo appends it
+		void putTo(ByteBuffer bytes, String code) {
+			for (int i = 0; i < runs.length; i += 2) {
+				if (i > 0) {
+					int gap = runs[i - 1] + runs[i] - runs[i - 2];
+					for (int j = gap; j < runs[i + 1]; j++) {
+						bytes.put((byte) template[j]);
+					}
+				}
+				put(bytes, code, runs[i], i + 2 == runs.length ? codeChars : runs[i + 2]);
+			}
 		}
 
 		@Override
 		public int hashCode() {
-			return groupSeparator.hashCode() * 31 ^ lineSeparator.hashCode();
+			return (groupSeparator.hashCode() * 31 ^ lineSeparator.hashCode()) * 31 + keyLength;
 		}
 		
 		/**
 		 * Two formats are equal if they produce identical output over all
-		 * possible keys.
+		 * possible keys. Only the built-in formats are canonical, so equal
+		 * built-in formats are identical; equal custom formats need not be.
 		 */
 		
 		@Override
@@ -360,30 +1469,133 @@ public final class Keycode implements Serializable {
 			if (obj == this) return true;
 			if (!(obj instanceof Format)) return false;
 			Format that = (Format) obj;
+			if (this.keyLength != that.keyLength) return false;
 			if (!this.groupSeparator.equals(that.groupSeparator)) return false;
 			if (!this.lineSeparator.equals(that.lineSeparator)) return false;
 			return true;
 		}
-		
-		private Object readResolve() {
-			if (this.equals(STANDARD)) return STANDARD;
-			if (this.equals(PLAIN)) return PLAIN;
-			if (this.equals(PLATFORM)) return PLATFORM;
-			return this;
+
+		// deserialized formats are replaced with an instance that carries the render plan
+		private Object readResolve() throws ObjectStreamException {
+			if (groupSeparator == null || !isWhitespaceOnly(groupSeparator)) throw new InvalidObjectException("invalid groupSeparator");
+			if (lineSeparator == null || !isWhitespaceOnly(lineSeparator)) throw new InvalidObjectException("invalid lineSeparator");
+			if (keyLength == 0) return canonical(groupSeparator, lineSeparator, 32);
+			if (!isKeyLength(keyLength)) throw new InvalidObjectException("invalid keyLength");
+			return canonical(groupSeparator, lineSeparator, keyLength);
 		}
 	}
 	
+	/*
+	 * The serialized form of a keycode, which is written in its place: the
+	 * compact form of its format, its tag and its key. The code is not
+	 * written, it is recomputed if it is needed after the keycode is read.
+	 */
+
+	private static final class Proxy implements Externalizable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Keycode keycode;
+
+		// for deserialization
+		public Proxy() { }
+
+		Proxy(Keycode keycode) {
+			this.keycode = keycode;
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+			Format format = keycode.format;
+			byte[] record = new byte[format.keyLength + 1];
+			record[0] = keycode.tag;
+			keycode.copyKey(record, 1);
+			format.writeCompact(out);
+			out.write(record);
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException {
+			Format format = Format.readCompact(in);
+			byte tag = in.readByte();
+			if (tag < 0) throw new InvalidObjectException("negative tag");
+			byte[] key = new byte[format.keyLength];
+			in.readFully(key);
+			keycode = new Keycode(format, key, 0, tag, null);
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			return keycode;
+		}
+
+	}
+
 	private static final long serialVersionUID = -8610389751205547848L;
 
-	private final Format format;
-	private final byte[] key;
+	// keycodes are serialized by proxy, these are the fields of the form written by earlier versions, which is still read
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("format", Format.class),
+		new ObjectStreamField("key", byte[].class),
+		new ObjectStreamField("code", String.class),
+	};
+
+	// the eight bytes at from as a big-endian long
+	static long load(byte[] bs, int from) {
+		long l = 0L;
+		for (int i = from; i < from + 8; i++) {
+			l = l << 8 | bs[i] & 0xff;
+		}
+		return l;
+	}
+
+	private static void store(long l, byte[] bs, int from) {
+		for (int i = from + 7; i >= from; i--) {
+			bs[i] = (byte) l;
+			l >>>= 8;
+		}
+	}
+
+	// not final, since they are assigned when deserializing
+	private Format format;
+	private long k0;
+	private long k1;
+	private long k2;
+	private long k3;
+	// the words of key data beyond the first 32 bytes, null for shorter keys
+	// k2 and k3 are zero for keys shorter than 32 bytes
+	private long[] words;
+	private byte tag;
+	// the characters of the code, computed on demand
 	private String code;
+	// the code rendered in the format, computed on demand by toString()
+	private String text;
+	// computed on demand, zero until then
+	private int hash;
 
-	private Keycode(Format format, byte[] key, String code) {
+	// copies the key data at offset, code may be null
+	Keycode(Format format, byte[] key, int offset, byte tag, String code) {
 		this.format = format;
-		this.key = key;
+		loadKey(key, offset);
+		this.tag = tag;
 		this.code = code;
 	}
+
+	// the key is one byte longer than the key length with the tag in the last byte
+	Keycode(Format format, byte[] key, String code) {
+		this(format, key, 0, key[format.keyLength], code);
+	}
+
+	// the formats must have the same key length
+	private Keycode(Format format, Keycode that) {
+		this.format = format;
+		this.k0 = that.k0;
+		this.k1 = that.k1;
+		this.k2 = that.k2;
+		this.k3 = that.k3;
+		this.words = that.words;
+		this.tag = that.tag;
+		this.code = that.code;
+	}
 	
 	/**
 	 * The format which controls the output of {@link #toString()}
@@ -398,11 +1610,14 @@ public final class Keycode implements Serializable {
 	/**
 	 * The key encapsulated by this object.
 	 * 
-	 * @return a 32 byte array containing a 256 bit key
+	 * @return an array containing the key, 32 bytes long unless the format
+	 *         has a different key size
 	 */
 	
 	public byte[] getKey() {
-		return Arrays.copyOf(key, 32);
+		byte[] key = new byte[format.keyLength];
+		copyKey(key, 0);
+		return key;
 	}
 
 	/**
@@ -415,12 +1630,38 @@ public final class Keycode implements Serializable {
 	 */
 	
 	public byte getTag() {
-		return key[32];
+		return tag;
+	}
+
+	/**
+	 * The last row of this keycode, in its format. This is computed without
+	 * encoding the other rows.
+	 * 
+	 * @return the digits of the last row, separated into groups
+	 * @see Format#lastRow(byte[], byte)
+	 */
+
+	public String getLastRow() {
+		long word = lastWord();
+		return format.lastRow((byte) (word >> 8), (byte) word, tag);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(key) ^ format.hashCode();
+		// racy, but an int is written atomically and recomputing is harmless
+		int h = hash;
+		if (h == 0) {
+			long l = ((k0 * 31 + k1) * 31 + k2) * 31 + k3;
+			if (words != null) {
+				for (long word : words) {
+					l = l * 31 + word;
+				}
+			}
+			h = ((int) (l ^ l >>> 32) * 31 + tag) ^ format.hashCode();
+			if (h == 0) h = 1;
+			hash = h;
+		}
+		return h;
 	}
 	
 	/**
@@ -433,13 +1674,122 @@ public final class Keycode implements Serializable {
 		if (obj == this) return true;
 		if (!(obj instanceof Keycode)) return false;
 		Keycode that = (Keycode) obj;
-		if (!Arrays.equals(this.key, that.key)) return false;
+		if (this.k0 != that.k0) return false;
+		if (this.k1 != that.k1) return false;
+		if (this.k2 != that.k2) return false;
+		if (this.k3 != that.k3) return false;
+		if (this.tag != that.tag) return false;
 		if (!this.format.equals(that.format)) return false;
+		if (this.words != null && !Arrays.equals(this.words, that.words)) return false;
 		return true;
 	}
 	
 	/**
-	 * Formats a key into a @code{String} using the keycode format.
+	 * Writes this keycode, in its format, into a character array. The array
+	 * must have space for {@link Format#getCodeLength()} characters at the
+	 * specified index.
+	 * 
+	 * @param chars
+	 *            the array into which the keycode is written
+	 * @param start
+	 *            the index at which the keycode will start in the array
+	 * @throws IllegalArgumentException
+	 *             if the array cannot accommodate the keycode
+	 * @return the number of characters written
+	 */
+
+	public int formatTo(char[] chars, int start) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		if (start < 0) throw new IllegalArgumentException("negative start");
+		int length = format.getCodeLength();
+		if (start + length > chars.length) throw new IllegalArgumentException("insufficient space for keycode");
+		String text = this.text;
+		if (text == null) {
+			codeTo(chars, start);
+			format.spread(chars, start);
+		} else {
+			text.getChars(0, length, chars, start);
+		}
+		return length;
+	}
+
+	/**
+	 * Appends this keycode, in its format, to the supplied {@link Appendable}.
+	 * The formatted string is not created, but a keycode that has not yet
+	 * been encoded computes and retains its code first.
+	 * 
+	 * @param out
+	 *            receives the characters of the keycode
+	 * @throws IOException
+	 *             if the appendable raises an exception
+	 */
+
+	public void formatTo(Appendable out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		String text = this.text;
+		if (text == null) {
+			format.appendTo(out, code());
+		} else {
+			append(out, text, 0, text.length());
+		}
+	}
+
+	/**
+	 * Writes this keycode, in its format, into a buffer as ASCII bytes. The
+	 * keycode is written at the buffer's position, which is then advanced by
+	 * {@link Format#getCodeLength()} bytes. Both heap and direct buffers are
+	 * supported.
+	 * 
+	 * @param bytes
+	 *            the buffer into which the keycode is written
+	 * @throws IllegalArgumentException
+	 *             if the buffer has insufficient space remaining for the
+	 *             keycode, in which case nothing is written
+	 * @return the number of bytes written
+	 */
+
+	public int writeTo(ByteBuffer bytes) {
+		if (bytes == null) throw new IllegalArgumentException("null bytes");
+		int length = format.getCodeLength();
+		if (length > bytes.remaining()) throw new IllegalArgumentException("insufficient space for keycode");
+		String text = this.text;
+		if (text == null) {
+			format.putTo(bytes, code());
+		} else {
+			put(bytes, text, 0, length);
+		}
+		return length;
+	}
+
+	// all keycode characters and separators are ASCII
+	private static void put(ByteBuffer bytes, String str, int start, int end) {
+		for (int i = start; i < end; i++) {
+			bytes.put((byte) str.charAt(i));
+		}
+	}
+
+	// writers create a subsequence when appending a range, so write directly
+	private static void append(Appendable out, String str, int start, int end) throws IOException {
+		if (out instanceof Writer) {
+			((Writer) out).write(str, start, end - start);
+		} else {
+			out.append(str, start, end);
+		}
+	}
+
+	private static void append(Appendable out, char[] chars, int start, int end) throws IOException {
+		if (out instanceof Writer) {
+			((Writer) out).write(chars, start, end - start);
+		} else {
+			for (int i = start; i < end; i++) {
+				out.append(chars[i]);
+			}
+		}
+	}
+
+	/**
+	 * Formats a key into a @code{String} using the keycode format. The string
+	 * is computed on the first call and retained by the keycode.
 	 * 
 	 * @param format
 	 *            controls the formatting of the output
@@ -449,26 +1799,98 @@ public final class Keycode implements Serializable {
 	
 	@Override
 	public String toString() {
-		String lineSep = format.lineSeparator;
-		String groupSep = format.groupSeparator;
-		boolean noLines = lineSep.isEmpty();
-		boolean noGroups = groupSep.isEmpty();
-		if (noLines && noGroups) return code;
-		StringBuilder sb = new StringBuilder(63 + 6 * lineSep.length() + 14 * groupSep.length());
-		for (int i = 0; i < 63; i+= 9) {
-			if (!noLines && i > 0) sb.append(lineSep);
-			if (noGroups) {
-				sb.append(code.substring(i    , i + 9));
-			} else {
-				sb.append(code.substring(i    , i + 3));
-				sb.append(groupSep);
-				sb.append(code.substring(i + 3, i + 6));
-				sb.append(groupSep);
-				sb.append(code.substring(i + 6, i + 9));
+		String text = this.text;
+		if (text == null) {
+			this.text = text = format.render(code());
+		}
+		return text;
+	}
+
+	// the eight bytes of key data at index * 8, as a big-endian long
+	long keyWord(int index) {
+		switch (index) {
+		case 0: return k0;
+		case 1: return k1;
+		case 2: return k2;
+		case 3: return k3;
+		default:
+			if (words == null || index < 0 || index - 4 >= words.length) throw new IllegalArgumentException("invalid index");
+			return words[index - 4];
+		}
+	}
+
+	// the last eight bytes of key data, which end with the two bytes encoded in the last row
+	long lastWord() {
+		return keyWord((format.keyLength >> 3) - 1);
+	}
+
+	// reads the words of a key of the format's length
+	private void loadKey(byte[] key, int offset) {
+		int count = format.keyLength >> 3;
+		this.k0 = load(key, offset    );
+		this.k1 = load(key, offset + 8);
+		if (count > 2) this.k2 = load(key, offset + 16);
+		if (count > 3) this.k3 = load(key, offset + 24);
+		if (count > 4) {
+			long[] words = new long[count - 4];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = load(key, offset + 32 + i * 8);
 			}
+			this.words = words;
 		}
-		return sb.toString();
 	}
-	
-	
+
+	void copyKey(byte[] key, int offset) {
+		int count = format.keyLength >> 3;
+		for (int i = 0; i < count; i++) {
+			store(keyWord(i), key, offset + i * 8);
+		}
+	}
+
+	// writes the characters of the code at start, without computing the code string
+	void codeTo(char[] chars, int start) {
+		String code = this.code;
+		if (code == null) {
+			encode(chars, start);
+		} else {
+			code.getChars(0, code.length(), chars, start);
+		}
+	}
+
+	// writes the characters of the code at start
+	private void encode(char[] chars, int start) {
+		byte[] key = new byte[format.keyLength];
+		copyKey(key, 0);
+		encode(key, 0, key.length, tag, chars, start);
+	}
+
+	// racy, but strings are safely published and recomputing is harmless
+	private String code() {
+		String code = this.code;
+		if (code == null) {
+			char[] chars = new char[format.codeChars];
+			encode(chars, 0);
+			this.code = code = new String(chars);
+		}
+		return code;
+	}
+
+	private Object writeReplace() throws ObjectStreamException {
+		return new Proxy(this);
+	}
+
+	// the serialized code is disregarded, it is recomputed from the key if needed
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		Format format = (Format) fields.get("format", null);
+		byte[] key = (byte[]) fields.get("key", null);
+		if (format == null) throw new InvalidObjectException("null format");
+		int length = format.keyLength;
+		if (key == null || key.length != length + 1) throw new InvalidObjectException("invalid key");
+		if (key[length] < 0) throw new InvalidObjectException("negative tag");
+		this.format = format;
+		loadKey(key, 0);
+		this.tag = key[length];
+	}
+
 }
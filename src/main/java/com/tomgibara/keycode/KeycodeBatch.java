@@ -0,0 +1,371 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Arrays;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * A fixed number of keys, stored contiguously, that may be encoded into, or
+ * decoded from, a single buffer of keycode characters. Within the buffer each
+ * keycode occupies exactly 63 characters, without any whitespace, in the order
+ * of the keys in the batch.
+ * <p>
+ * Decoding never raises an exception for invalid keycode data; instead, each
+ * entry in the batch records whether it was successfully decoded. Keys that
+ * are set explicitly are always valid.
+ * <p>
+ * Unlike the other classes in this package, instances of this class are
+ * mutable and are not threadsafe. Batches are obtained from
+ * {@link Keycode.Format#batch(int)}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeBatch {
+
+	/**
+	 * The number of characters occupied by each keycode in a batch buffer.
+	 */
+
+	public static final int CODE_LENGTH = 63;
+
+	static final int ENTRY_LENGTH = 33;
+
+	private final Format format;
+	private final int size;
+	private final byte[] keys;
+	private final boolean[] valid;
+
+	KeycodeBatch(Format format, int size) {
+		this.format = format;
+		this.size = size;
+		keys = new byte[size * ENTRY_LENGTH];
+		valid = new boolean[size];
+		Arrays.fill(valid, true);
+	}
+
+	/**
+	 * The format of keycodes obtained via {@link #keycode(int)}.
+	 * 
+	 * @return the batch format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * The number of keys in the batch.
+	 * 
+	 * @return the batch size
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets the key at the specified index with a tag of zero.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid or the array is not 32 bytes long
+	 */
+
+	public void setKey(int index, byte[] key) {
+		setKey(index, key, (byte) 0);
+	}
+
+	/**
+	 * Sets the key and tag at the specified index.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a 7 bit value that augments the key data
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid, the array is not 32 bytes long or
+	 *             the tag is negative
+	 */
+
+	public void setKey(int index, byte[] key, byte tag) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length != 32) throw new IllegalArgumentException("invalid key length");
+		setKey(index, key, 0, tag);
+	}
+
+	/**
+	 * Sets the key and tag at the specified index, taking the key data from
+	 * 32 bytes of the supplied array.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @param key
+	 *            an array containing key data
+	 * @param offset
+	 *            the index at which the key data starts in the array
+	 * @param tag
+	 *            a 7 bit value that augments the key data
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid, the array does not contain 32
+	 *             bytes at the offset or the tag is negative
+	 */
+
+	public void setKey(int index, byte[] key, int offset, byte tag) {
+		checkIndex(index);
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (offset + 32 > key.length) throw new IllegalArgumentException("insufficient key data");
+		if (tag < 0) throw new IllegalArgumentException("negative tag");
+		int start = index * ENTRY_LENGTH;
+		System.arraycopy(key, offset, keys, start, 32);
+		keys[start + 32] = tag;
+		valid[index] = true;
+	}
+
+	/**
+	 * The key at the specified index.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @return a 32 byte array containing a 256 bit key
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid
+	 */
+
+	public byte[] getKey(int index) {
+		checkIndex(index);
+		int start = index * ENTRY_LENGTH;
+		return Arrays.copyOfRange(keys, start, start + 32);
+	}
+
+	/**
+	 * Copies the key at the specified index into 32 bytes of the supplied
+	 * array.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @param key
+	 *            the array into which the key data will be copied
+	 * @param offset
+	 *            the index in the array at which the key data will start
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid or the array cannot accommodate 32
+	 *             bytes at the offset
+	 */
+
+	public void getKey(int index, byte[] key, int offset) {
+		checkIndex(index);
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (offset + 32 > key.length) throw new IllegalArgumentException("insufficient key space");
+		System.arraycopy(keys, index * ENTRY_LENGTH, key, offset, 32);
+	}
+
+	/**
+	 * The tag associated with the key at the specified index.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @return the tag associated with the key
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid
+	 */
+
+	public byte getTag(int index) {
+		checkIndex(index);
+		return keys[index * ENTRY_LENGTH + 32];
+	}
+
+	/**
+	 * Whether the key at the specified index holds valid data. This will only
+	 * be false if the entry failed to decode; in that case, the key and tag
+	 * will be zero.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @return true if the entry holds a valid key, false otherwise
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid
+	 */
+
+	public boolean isValid(int index) {
+		checkIndex(index);
+		return valid[index];
+	}
+
+	/**
+	 * The number of entries in the batch which hold valid keys.
+	 * 
+	 * @return the count of valid entries
+	 */
+
+	public int validCount() {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (valid[i]) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * A keycode for the key at the specified index, in the format of the
+	 * batch.
+	 * 
+	 * @param index
+	 *            the index of the key in the batch
+	 * @return a keycode for the key
+	 * @throws IllegalArgumentException
+	 *             if the index is invalid
+	 * @throws IllegalStateException
+	 *             if the entry did not decode successfully
+	 */
+
+	public Keycode keycode(int index) {
+		checkIndex(index);
+		if (!valid[index]) throw new IllegalStateException("invalid entry at index " + index);
+		int start = index * ENTRY_LENGTH;
+		return new Keycode(format, keys, start, keys[start + 32], null);
+	}
+
+	// identifies the last row of the entry at index
+	int lastRowValue(int index) {
+		int start = index * ENTRY_LENGTH;
+		return LastRowIndex.value(keys[start + 30], keys[start + 31], keys[start + 32]);
+	}
+
+	/**
+	 * Encodes every key in the batch into a new array of characters.
+	 * 
+	 * @return an array containing 63 characters for each key in the batch
+	 */
+
+	public char[] encode() {
+		char[] chars = new char[size * CODE_LENGTH];
+		encode(chars, 0);
+		return chars;
+	}
+
+	/**
+	 * Encodes every key in the batch into the supplied array, starting at the
+	 * specified offset.
+	 * 
+	 * @param chars
+	 *            an array to receive 63 characters for each key in the batch
+	 * @param offset
+	 *            the index in the array at which the first keycode will start
+	 * @throws IllegalArgumentException
+	 *             if the array cannot accommodate the keycodes at the offset
+	 */
+
+	public void encode(char[] chars, int offset) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (offset + size * CODE_LENGTH > chars.length) throw new IllegalArgumentException("insufficient space for keycodes");
+		for (int i = 0; i < size; i++) {
+			int start = i * ENTRY_LENGTH;
+			Keycode.encode(keys, start, keys[start + 32], chars, offset + i * CODE_LENGTH);
+		}
+	}
+
+	/**
+	 * Decodes keys from an array of characters containing 63 characters for
+	 * each key in the batch. The success of decoding each entry is recorded
+	 * and may be subsequently checked via {@link #isValid(int)}.
+	 * 
+	 * @param chars
+	 *            an array containing contiguous keycodes without whitespace
+	 * @param offset
+	 *            the index in the array at which the first keycode starts
+	 * @return the number of entries that were successfully decoded
+	 * @throws IllegalArgumentException
+	 *             if the array does not contain sufficient characters at the
+	 *             offset
+	 */
+
+	public int decode(char[] chars, int offset) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (offset + size * CODE_LENGTH > chars.length) throw new IllegalArgumentException("insufficient keycode characters");
+		return BulkCodec.decode(chars, offset, size, keys, valid);
+	}
+
+	/**
+	 * Decodes keys from character data containing exactly 63 characters for
+	 * each key in the batch. The success of decoding each entry is recorded
+	 * and may be subsequently checked via {@link #isValid(int)}.
+	 * 
+	 * @param chars
+	 *            contiguous keycodes without whitespace
+	 * @return the number of entries that were successfully decoded
+	 * @throws IllegalArgumentException
+	 *             if the character data is not of the required length
+	 */
+
+	public int decode(CharSequence chars) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		if (chars.length() != size * CODE_LENGTH) throw new IllegalArgumentException("invalid keycode characters length");
+		// each code is copied out so that it is decoded from an array
+		char[] code = new char[CODE_LENGTH];
+		int success = 0;
+		for (int i = 0; i < size; i++) {
+			int from = i * CODE_LENGTH;
+			for (int j = 0; j < CODE_LENGTH; j++) {
+				code[j] = chars.charAt(from + j);
+			}
+			if (record(i, Keycode.decode(code, 0, keys, i * ENTRY_LENGTH), keys, valid)) success++;
+		}
+		return success;
+	}
+
+	// decodes count contiguous keycodes into packed keys, recording the validity of each
+	static int decode(char[] chars, int offset, int count, byte[] keys, boolean[] valid) {
+		int success = 0;
+		for (int i = 0; i < count; i++) {
+			int from = offset + i * CODE_LENGTH;
+			if (record(i, Keycode.decode(chars, from, keys, i * ENTRY_LENGTH), keys, valid)) success++;
+		}
+		return success;
+	}
+
+	// records the result of decoding the entry at index, returning whether it was valid
+	private static boolean record(int index, int result, byte[] keys, boolean[] valid) {
+		int start = index * ENTRY_LENGTH;
+		if (result >= 0) {
+			keys[start + 32] = (byte) result;
+			valid[index] = true;
+			return true;
+		}
+		Arrays.fill(keys, start, start + ENTRY_LENGTH, (byte) 0);
+		valid[index] = false;
+		return false;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= size) throw new IllegalArgumentException("index too large");
+	}
+
+}
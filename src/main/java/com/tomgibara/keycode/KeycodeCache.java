@@ -0,0 +1,245 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Parses keycodes, retaining a bounded number of recently parsed keycodes so
+ * that codes which are presented repeatedly are not repeatedly verified and
+ * decoded. Codes are cached by their significant characters, so the same
+ * keycode is found irrespective of any whitespace it contains.
+ * <p>
+ * The cache is divided into independently locked stripes, each of which
+ * evicts its least recently used keycodes. Lookups for different codes
+ * rarely contend, and parsing is always performed outside any lock. Codes
+ * which fail to parse are not cached.
+ * <p>
+ * Instances of this class are threadsafe. Caches are obtained from
+ * {@link Keycode.Format#cached(int)}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeCache {
+
+	// an access ordered map that evicts its eldest entry when full
+	private static final class Stripe extends LinkedHashMap<String, Keycode> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		long hits = 0L;
+		long misses = 0L;
+		long evictions = 0L;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Keycode> eldest) {
+			if (size() <= capacity) return false;
+			evictions++;
+			return true;
+		}
+	}
+
+	private final Format format;
+	private final int maxEntries;
+	private final Stripe[] stripes;
+	private final int mask;
+
+	KeycodeCache(Format format, int maxEntries) {
+		this.format = format;
+		this.maxEntries = maxEntries;
+		// enough stripes to avoid contention, without stripes that are empty
+		int count = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors() * 4, maxEntries));
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+		}
+		mask = count - 1;
+	}
+
+	/**
+	 * The format of the keycodes returned by this cache.
+	 * 
+	 * @return the cache format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * The maximum number of keycodes retained by this cache.
+	 * 
+	 * @return the maximum number of entries
+	 */
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Parses a keycode, returning a previously parsed instance if one has
+	 * been retained for the same code. The result is always identical to that
+	 * of {@link Keycode.Format#parse(CharSequence)}.
+	 * 
+	 * @param code
+	 *            the character data of the code, typically a String
+	 * @throws IllegalArgumentException
+	 *             if the code is invalid
+	 * @return a keycode with the format of this cache
+	 */
+
+	public Keycode parse(CharSequence code) {
+		if (code == null) throw new IllegalArgumentException("null code");
+		String key = normalize(code);
+		// codes that cannot be normalized cannot be valid
+		if (key == null) return format.parse(code);
+		Stripe stripe = stripe(key);
+		Keycode keycode;
+		synchronized (stripe) {
+			keycode = stripe.get(key);
+			if (keycode != null) {
+				stripe.hits++;
+				return keycode;
+			}
+			stripe.misses++;
+		}
+		// the code itself is parsed so that failures are reported at their positions in it
+		keycode = format.parse(code);
+		synchronized (stripe) {
+			Keycode existing = stripe.get(key);
+			if (existing != null) return existing;
+			stripe.put(key, keycode);
+		}
+		return keycode;
+	}
+
+	/**
+	 * The number of keycodes currently retained by the cache.
+	 * 
+	 * @return the number of entries
+	 */
+
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The number of times a keycode was found in the cache.
+	 * 
+	 * @return the number of cache hits
+	 */
+
+	public long getHitCount() {
+		long count = 0L;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.hits;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The number of times a code was parsed because no keycode was found in
+	 * the cache.
+	 * 
+	 * @return the number of cache misses
+	 */
+
+	public long getMissCount() {
+		long count = 0L;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.misses;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The number of keycodes that have been removed from the cache to make
+	 * room for others.
+	 * 
+	 * @return the number of evictions
+	 */
+
+	public long getEvictionCount() {
+		long count = 0L;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.evictions;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all keycodes from the cache. The hit, miss and eviction counts
+	 * are unaffected.
+	 */
+
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	private Stripe stripe(String key) {
+		int h = key.hashCode();
+		// spread the higher bits, as HashMap does
+		h ^= h >>> 16;
+		return stripes[h & mask];
+	}
+
+	// the significant characters of a code, or null if there are a different number to the format's codes
+	private String normalize(CharSequence code) {
+		int length = code.length();
+		int expected = format.codeChars;
+		if (length == expected && code instanceof String) return (String) code;
+		char[] chars = new char[expected];
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			char c = code.charAt(i);
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			if (count == expected) return null;
+			chars[count++] = c;
+		}
+		return count == expected ? new String(chars) : null;
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Writes keys as keycodes in a single format using a reusable internal
+ * buffer, so that no objects are created for each key that is written.
+ * <p>
+ * Unlike the other classes in this package, instances of this class are
+ * mutable and are not threadsafe. A codec is intended to be retained by a
+ * single thread (for example via a {@link ThreadLocal}) and used repeatedly.
+ * Codecs are obtained from {@link Keycode.Format#codec()}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeCodec {
+
+	private final Format format;
+	private final char[] chars;
+
+	KeycodeCodec(Format format) {
+		this.format = format;
+		chars = new char[format.getCodeLength()];
+	}
+
+	/**
+	 * The format in which keycodes are written by this codec.
+	 * 
+	 * @return the codec format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Encodes a key and tag as a keycode string. The string is the only
+	 * object created.
+	 * 
+	 * @param key
+	 *            an array containing key data
+	 * @param offset
+	 *            the index at which the key data starts
+	 * @param tag
+	 *            a 7 bit value that augments the key data
+	 * @throws IllegalArgumentException
+	 *             if the key array does not contain a whole key at the
+	 *             offset, or if the tag is negative
+	 * @return the keycode as a string
+	 */
+
+	public String encode(byte[] key, int offset, byte tag) {
+		int length = format.encodeTo(key, offset, tag, chars, 0);
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Encodes a key and tag as a keycode which is appended to the supplied
+	 * {@link Appendable}. Writers, string builders and character buffers
+	 * receive the keycode in a single operation.
+	 * 
+	 * @param key
+	 *            an array containing key data
+	 * @param offset
+	 *            the index at which the key data starts
+	 * @param tag
+	 *            a 7 bit value that augments the key data
+	 * @param out
+	 *            receives the characters of the keycode
+	 * @throws IllegalArgumentException
+	 *             if the key array does not contain a whole key at the
+	 *             offset, or if the tag is negative
+	 * @throws IOException
+	 *             if the appendable raises an exception
+	 */
+
+	public void encodeTo(byte[] key, int offset, byte tag, Appendable out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		int length = format.encodeTo(key, offset, tag, chars, 0);
+		if (out instanceof Writer) {
+			((Writer) out).write(chars, 0, length);
+		} else if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(chars, 0, length);
+		} else if (out instanceof CharBuffer) {
+			((CharBuffer) out).put(chars, 0, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				out.append(chars[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.KeycodeOutputStream.FORMAT;
+import static com.tomgibara.keycode.KeycodeOutputStream.MAGIC;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Reads keycodes from a stream of bytes written by a
+ * {@link KeycodeOutputStream}. Keycodes are returned with the formats with
+ * which they were written, and their codes are only computed if they are
+ * needed.
+ * <p>
+ * Unlike most classes in this package, instances of this class are mutable
+ * and are not threadsafe.
+ * 
+ * @author tomgibara
+ * @see KeycodeOutputStream
+ */
+
+public final class KeycodeInputStream implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataInputStream in;
+	private final byte[] key = new byte[64];
+	private Format format = null;
+	private long count = 0L;
+
+	/**
+	 * Creates a stream that reads keycodes from an underlying stream of
+	 * bytes. The header that identifies the stream is read immediately.
+	 * 
+	 * @param in
+	 *            the source of the bytes
+	 * @throws IOException
+	 *             if the header cannot be read, or does not identify a
+	 *             stream of keycodes
+	 */
+
+	public KeycodeInputStream(InputStream in) throws IOException {
+		if (in == null) throw new IllegalArgumentException("null in");
+		this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		int magic = this.in.readInt();
+		if (magic >>> 16 != MAGIC >>> 16) throw new StreamCorruptedException("not a keycode stream");
+		if (magic != MAGIC) throw new StreamCorruptedException("unsupported version: " + (magic & 0xffff));
+	}
+
+	/**
+	 * The number of keycodes that have been read.
+	 * 
+	 * @return the number of keycodes read
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Reads the next keycode.
+	 * 
+	 * @throws IOException
+	 *             if the underlying stream raises an exception, if the
+	 *             stream is invalid, or if it ends part way through a keycode
+	 * @return the next keycode, or null if the end of the stream has been
+	 *         reached
+	 */
+
+	public Keycode read() throws IOException {
+		while (true) {
+			int b = in.read();
+			if (b < 0) return null;
+			if (b == FORMAT) {
+				format = Format.readCompact(in);
+				continue;
+			}
+			if (b > FORMAT) throw new StreamCorruptedException("invalid record");
+			if (format == null) throw new StreamCorruptedException("missing format");
+			in.readFully(key, 0, format.keyLength);
+			count++;
+			return new Keycode(format, key, 0, (byte) b, null);
+		}
+	}
+
+	/**
+	 * Reads every remaining keycode.
+	 * 
+	 * @throws IOException
+	 *             if the underlying stream raises an exception, if the
+	 *             stream is invalid, or if it ends part way through a keycode
+	 * @return a list of the keycodes read, in the order of the stream
+	 */
+
+	public List<Keycode> readAll() throws IOException {
+		List<Keycode> keycodes = new ArrayList<>();
+		for (Keycode keycode = read(); keycode != null; keycode = read()) {
+			keycodes.add(keycode);
+		}
+		return keycodes;
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 */
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Keycode.load;
+import static com.tomgibara.keycode.KeycodeSet.checkKey;
+
+/**
+ * <p>
+ * Maps 256 bit keys, each combined with a 7 bit tag, to long values, such as
+ * record identifiers. Entries are stored outside the Java heap so that very
+ * large numbers of keys can be held without the per-entry overhead of a
+ * {@code HashMap<Keycode, Long>} or its cost to the garbage collector. Each
+ * entry occupies 48 bytes of direct memory in a table that is kept at most
+ * three quarters full.
+ * <p>
+ * Keys are identified exactly as they are by {@link KeycodeSet}, and the
+ * same considerations apply. Since values are primitive, methods that look up
+ * a value are supplied with the value to return if the key is absent.
+ * <p>
+ * Instances of this class are threadsafe. The map is divided into
+ * independently locked stripes, and lookups in the same stripe do not block
+ * each other.
+ * 
+ * @author tomgibara
+ * @see KeycodeSet
+ */
+
+public final class KeycodeMap {
+
+	private final KeycodeTable table;
+
+	/**
+	 * Creates an empty map with space for the expected number of entries.
+	 * The map grows as necessary, but growth temporarily requires additional
+	 * memory and blocks access to part of the map.
+	 * 
+	 * @param expectedSize
+	 *            the number of entries that the map is expected to hold
+	 * @throws IllegalArgumentException
+	 *             if the expected size is negative
+	 */
+
+	public KeycodeMap(long expectedSize) {
+		if (expectedSize < 0L) throw new IllegalArgumentException("negative expectedSize");
+		table = new KeycodeTable(expectedSize, true);
+	}
+
+	/**
+	 * The number of entries in the map.
+	 * 
+	 * @return the size of the map
+	 */
+
+	public long size() {
+		return table.size();
+	}
+
+	/**
+	 * Removes every entry from the map and releases the memory it occupied.
+	 */
+
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * Associates a value with the key and tag of a keycode, replacing any
+	 * existing value.
+	 * 
+	 * @param keycode
+	 *            a keycode
+	 * @param value
+	 *            the value to associate with its key
+	 * @throws IllegalStateException
+	 *             if the map cannot grow to accommodate the entry
+	 * @return true if the map did not already contain the key
+	 */
+
+	public boolean put(Keycode keycode, long value) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.put(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag(), value);
+	}
+
+	/**
+	 * Associates a value with a key and tag, replacing any existing value.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @param value
+	 *            the value to associate with the key
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @throws IllegalStateException
+	 *             if the map cannot grow to accommodate the entry
+	 * @return true if the map did not already contain the key
+	 */
+
+	public boolean put(byte[] key, byte tag, long value) {
+		checkKey(key, tag);
+		return table.put(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag, value);
+	}
+
+	/**
+	 * The value associated with the key and tag of a keycode.
+	 * 
+	 * @param keycode
+	 *            a keycode
+	 * @param absent
+	 *            the value returned if the map does not contain the key
+	 * @return the associated value, or the absent value
+	 */
+
+	public long get(Keycode keycode, long absent) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.get(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag(), absent);
+	}
+
+	/**
+	 * The value associated with a key and tag.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @param absent
+	 *            the value returned if the map does not contain the key
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @return the associated value, or the absent value
+	 */
+
+	public long get(byte[] key, byte tag, long absent) {
+		checkKey(key, tag);
+		return table.get(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag, absent);
+	}
+
+	/**
+	 * The value associated with the key and tag of a code. The code is parsed
+	 * as if by {@link Keycode.Format#parse(CharSequence)}, but no keycode is
+	 * created, and the absent value is returned for codes that fail to
+	 * parse.
+	 * 
+	 * @param code
+	 *            the character data of the code, typically a String
+	 * @param absent
+	 *            the value returned if the code is invalid or the map does
+	 *            not contain its key
+	 * @return the associated value, or the absent value
+	 */
+
+	public long get(CharSequence code, long absent) {
+		if (code == null) throw new IllegalArgumentException("null code");
+		byte[] key = new byte[32];
+		int tag = Keycode.parse(code, 32, key, 0);
+		if (tag < 0) return absent;
+		return table.get(load(key, 0), load(key, 8), load(key, 16), load(key, 24), (byte) tag, absent);
+	}
+
+	/**
+	 * Whether the map contains the key and tag of a keycode.
+	 * 
+	 * @param keycode
+	 *            a keycode
+	 * @return true if the map contains the key
+	 */
+
+	public boolean containsKey(Keycode keycode) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.contains(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag());
+	}
+
+	/**
+	 * Whether the map contains the key and tag of a code. The code is parsed
+	 * as it is by {@link #get(CharSequence, long)}.
+	 * 
+	 * @param code
+	 *            the character data of the code, typically a String
+	 * @return true if the code is valid and the map contains its key
+	 */
+
+	public boolean containsKey(CharSequence code) {
+		if (code == null) throw new IllegalArgumentException("null code");
+		byte[] key = new byte[32];
+		int tag = Keycode.parse(code, 32, key, 0);
+		return tag >= 0 && table.contains(load(key, 0), load(key, 8), load(key, 16), load(key, 24), (byte) tag);
+	}
+
+	/**
+	 * Removes the entry for the key and tag of a keycode.
+	 * 
+	 * @param keycode
+	 *            a keycode
+	 * @return true if the map contained the key
+	 */
+
+	public boolean remove(Keycode keycode) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.remove(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag());
+	}
+
+	/**
+	 * Removes the entry for a key and tag.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @return true if the map contained the key
+	 */
+
+	public boolean remove(byte[] key, byte tag) {
+		checkKey(key, tag);
+		return table.remove(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag);
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Writes keycodes to a stream of bytes in a compact binary form that is read
+ * with a {@link KeycodeInputStream}. Each keycode is written as its tag and
+ * its key, so that a keycode for a 256 bit key occupies 33 bytes, and the
+ * format of the keycodes is written only when it differs from that of the
+ * previous keycode. No keycode characters are computed or written, so
+ * collections of keycodes can be stored and transmitted in little more than
+ * the size of their keys.
+ * <p>
+ * Output is buffered, and is only written to the underlying stream when the
+ * buffer is full, or when the stream is flushed or closed.
+ * <p>
+ * Unlike most classes in this package, instances of this class are mutable
+ * and are not threadsafe.
+ * 
+ * @author tomgibara
+ * @see KeycodeInputStream
+ */
+
+public final class KeycodeOutputStream implements Closeable, Flushable {
+
+	// identifies a keycode stream, in the high two bytes, and its version
+	static final int MAGIC = 0x4b430001;
+	// precedes the compact form of a format, tags occupy the values below
+	static final int FORMAT = 0x80;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataOutputStream out;
+	// the tag followed by the key of a keycode
+	private final byte[] record = new byte[65];
+	private Format format = null;
+	private long count = 0L;
+
+	/**
+	 * Creates a stream that writes keycodes to an underlying stream of
+	 * bytes. A short header that identifies the stream is written
+	 * immediately.
+	 * 
+	 * @param out
+	 *            the destination of the bytes
+	 * @throws IOException
+	 *             if the header cannot be written
+	 */
+
+	public KeycodeOutputStream(OutputStream out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		this.out.writeInt(MAGIC);
+	}
+
+	/**
+	 * The number of keycodes that have been written.
+	 * 
+	 * @return the number of keycodes written
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes a keycode, together with its format if the format of the
+	 * previous keycode was different.
+	 * 
+	 * @param keycode
+	 *            the keycode to write
+	 * @throws IOException
+	 *             if the underlying stream raises an exception, or if the
+	 *             format has a separator longer than 16 characters
+	 */
+
+	public void write(Keycode keycode) throws IOException {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		Format format = keycode.getFormat();
+		if (!format.equals(this.format)) {
+			// checked first, so that nothing is written for a format that could not be read
+			format.checkCompact();
+			out.writeByte(FORMAT);
+			format.writeCompact(out);
+			this.format = format;
+		}
+		record[0] = keycode.getTag();
+		keycode.copyKey(record, 1);
+		out.write(record, 0, format.keyLength + 1);
+		count++;
+	}
+
+	/**
+	 * Writes every keycode in a collection, in the order of its iteration.
+	 * 
+	 * @param keycodes
+	 *            the keycodes to write
+	 * @throws IllegalArgumentException
+	 *             if any keycode is null, in which case the preceding
+	 *             keycodes will have been written
+	 * @throws IOException
+	 *             if the underlying stream raises an exception
+	 */
+
+	public void writeAll(Iterable<Keycode> keycodes) throws IOException {
+		if (keycodes == null) throw new IllegalArgumentException("null keycodes");
+		for (Keycode keycode : keycodes) {
+			write(keycode);
+		}
+	}
+
+	/**
+	 * Writes any buffered bytes and flushes the underlying stream.
+	 */
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes any buffered bytes and closes the underlying stream.
+	 */
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
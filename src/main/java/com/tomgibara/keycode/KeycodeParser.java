@@ -0,0 +1,314 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import com.tomgibara.keycode.Keycode.Failure;
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Parses a keycode incrementally as its characters are entered, one at a
+ * time, so that errors can be reported as soon as they are made. This is
+ * intended for data entry, where the input is revalidated on every
+ * keystroke; the parser mirrors the entered text, including its whitespace,
+ * and supports backspacing over it.
+ * <p>
+ * The checksum of each row is accumulated as its characters arrive, and is
+ * verified, and the row decoded, when its ninth character is entered.
+ * Each character, or backspace, is processed in constant time, and once
+ * the last row is verified the keycode is available without reparsing.
+ * <p>
+ * The state of the parser is reported as an integer result, in the same
+ * way as {@link Format#validate(CharSequence)}: a non-negative result is the
+ * number of keycode characters entered so far, without error, and a
+ * negative result encodes the first error detected, which may be examined
+ * with the static methods of {@link Failure}. Positions index the entered
+ * text. Since errors are reported as early as possible, an input with
+ * several errors may report a different failure from that reported by
+ * {@link Format#parse(CharSequence)}.
+ * <p>
+ * Unlike most classes in this package, instances of this class are mutable
+ * and are not threadsafe. Parsers are obtained from
+ * {@link Keycode.Format#parser()}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeParser {
+
+	private final Format format;
+	// the text entered, including whitespace
+	private final StringBuilder input = new StringBuilder(80);
+	// the significant characters entered, the first 63 are retained
+	private final char[] chars = new char[63];
+	// the index into input of each retained character
+	private final int[] positions = new int[64];
+	private final byte[] key = new byte[32];
+	// the states of the last row checksum after each of its digits
+	private final int[] states = new int[10];
+	// the number of significant characters entered
+	private int count = 0;
+	// the number of characters that have been accumulated into the checksums
+	private int folded = 0;
+	// the running checksum of the current base32 row
+	private int sum = 0;
+	private int tag = 0;
+	// the failure result, or zero if there is none
+	private int failure = 0;
+	// the index of the significant character that caused the failure
+	private int failureIndex = 0;
+
+	KeycodeParser(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * The format of the keycodes produced by this parser.
+	 * 
+	 * @return the parser format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Enters a single character. Any character may be entered, but
+	 * characters that are not whitespace, and which are not valid at their
+	 * position in the keycode, will cause the parser to report a failure
+	 * until they are removed.
+	 * 
+	 * @param c
+	 *            the character entered
+	 * @return the result after the character is entered
+	 * @see #getResult()
+	 */
+
+	public int accept(char c) {
+		int position = input.length();
+		input.append(c);
+		if (c < 128 && VALUES_32[c] == -2) return getResult();
+		int index = count++;
+		if (index < 63) {
+			chars[index] = c;
+			positions[index] = position;
+		} else if (index == 63) {
+			positions[63] = position;
+		}
+		if (failure == 0) fold(index);
+		return getResult();
+	}
+
+	/**
+	 * Enters a sequence of characters, as if each were supplied to
+	 * {@link #accept(char)}.
+	 * 
+	 * @param chars
+	 *            the characters entered
+	 * @return the result after the characters are entered
+	 */
+
+	public int accept(CharSequence chars) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		int length = chars.length();
+		for (int i = 0; i < length; i++) {
+			accept(chars.charAt(i));
+		}
+		return getResult();
+	}
+
+	/**
+	 * Removes the last character entered, which may be whitespace. Any
+	 * failure caused by the character is cleared. If no characters have
+	 * been entered, this method has no effect.
+	 * 
+	 * @return the result after the character is removed
+	 */
+
+	public int backspace() {
+		int length = input.length();
+		if (length == 0) return getResult();
+		char c = input.charAt(length - 1);
+		input.setLength(length - 1);
+		if (c < 128 && VALUES_32[c] == -2) return getResult();
+		int index = --count;
+		if (index < folded) {
+			unfold(index);
+		}
+		if (failure != 0 && index <= failureIndex) failure = 0;
+		return getResult();
+	}
+
+	/**
+	 * Removes every character entered, returning the parser to its initial
+	 * state.
+	 */
+
+	public void reset() {
+		input.setLength(0);
+		count = 0;
+		folded = 0;
+		sum = 0;
+		failure = 0;
+	}
+
+	/**
+	 * The text entered, including any whitespace.
+	 * 
+	 * @return the characters entered
+	 */
+
+	public String getInput() {
+		return input.toString();
+	}
+
+	/**
+	 * The current result, which is negative if an error has been detected,
+	 * and otherwise is the number of keycode characters entered.
+	 * 
+	 * @return the number of characters entered, or a failure result
+	 */
+
+	public int getResult() {
+		return failure == 0 ? count : failure;
+	}
+
+	/**
+	 * The number of rows of the keycode that have been entered in full and
+	 * verified.
+	 * 
+	 * @return the number of valid rows, from 0 to 7 inclusive
+	 */
+
+	public int getValidRows() {
+		int rows = folded / 9;
+		return failure != 0 && failureIndex == rows * 9 - 1 ? rows - 1 : rows;
+	}
+
+	/**
+	 * Whether a complete and valid keycode has been entered.
+	 * 
+	 * @return true if the keycode is available
+	 * @see #getKeycode()
+	 */
+
+	public boolean isComplete() {
+		return failure == 0 && count == 63;
+	}
+
+	/**
+	 * The keycode that has been entered, which must be complete.
+	 * 
+	 * @throws IllegalStateException
+	 *             if a complete and valid keycode has not been entered
+	 * @return a keycode with the format of this parser
+	 */
+
+	public Keycode getKeycode() {
+		if (!isComplete()) throw new IllegalStateException("incomplete keycode");
+		return new Keycode(format, key, 0, (byte) tag, new String(chars));
+	}
+
+	// accumulates the character at index, which must follow the previously folded character
+	private void fold(int index) {
+		if (index == 63) {
+			fail(Failure.LONG_CODE, 0, 63, 63);
+			return;
+		}
+		char c = chars[index];
+		if (c >= 128) {
+			fail(Failure.NON_ASCII_CHARACTER, index);
+			return;
+		}
+		if (index < 54) {
+			if (VALUES_32[c] < 0) {
+				fail(Failure.INVALID_CHARACTER, index);
+				return;
+			}
+			int i = index % 9;
+			sum ^= TAQG32.contribution(i, c);
+			folded++;
+			if (i == 8) {
+				int row = index - 8;
+				if (sum != 0) {
+					fail(Failure.INVALID_CHECKSUM, index / 9 + 1, row, index);
+					return;
+				}
+				Encoder.parseBytesBase32(chars, row, key, row / 9 * 5);
+			}
+			return;
+		}
+		// the last row
+		if (c < 48 || c >= 58) {
+			fail(Failure.EXPECTED_DIGIT, index);
+			return;
+		}
+		int i = index - 54;
+		int group = i / 3 * 3;
+		if (i == group && c == '0') {
+			fail(Failure.INVALID_ZERO, index);
+			return;
+		}
+		if (i != group && chars[index - 1] == c) {
+			fail(Failure.INVALID_DIGIT_PAIR, 7, index - 1, index);
+			return;
+		}
+		states[i + 1] = TAQG10.step(states[i], c);
+		folded++;
+		switch (i) {
+		case 2:
+		case 5:
+			if (Encoder.parse9Bits(chars, index - 2) >= 512) fail(Failure.INVALID_DIGIT_TRIPLE, 7, index - 2, index);
+			break;
+		case 7:
+			if (Encoder.parse6Bits(chars, index - 1) >= 64) fail(Failure.INVALID_DIGIT_TRIPLE, 7, index - 1, index);
+			break;
+		case 8:
+			if (states[9] != 0) {
+				fail(Failure.INVALID_CHECKSUM, 7, 54, index);
+				break;
+			}
+			// the remaining checks and the decoding of the last two bytes
+			int result = Keycode.decodeLastRow(chars, 0, key, 0);
+			if (result < 0) {
+				fail(Failure.of(result), Failure.row(result), Failure.position(result), index);
+			} else {
+				tag = result;
+			}
+			break;
+		}
+	}
+
+	// removes the character at index, which must be the last folded character, from the checksums
+	private void unfold(int index) {
+		folded--;
+		if (index < 54) sum ^= TAQG32.contribution(index % 9, chars[index]);
+	}
+
+	private void fail(Failure f, int index) {
+		fail(f, index / 9 + 1, index, index);
+	}
+
+	// records a failure at a character position, caused by the character at index
+	private void fail(Failure f, int row, int position, int index) {
+		failure = Failure.result(f, row, positions[position]);
+		failureIndex = index;
+	}
+
+}
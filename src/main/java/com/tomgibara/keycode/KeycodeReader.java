@@ -0,0 +1,166 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Reads consecutive keycodes from a stream of characters. The stream is
+ * divided into codes of 63 non-whitespace characters (nine for each row of
+ * the reader's format), and any whitespace may
+ * appear within and between codes, so keycodes written in any format can be
+ * read, including those written by a {@link KeycodeWriter}. Characters are
+ * read into a fixed size buffer, and no strings are created for the codes
+ * that are read.
+ * <p>
+ * Keycodes are validated exactly as they are by
+ * {@link Format#parse(CharSequence)}; a code that fails to parse is
+ * reported with an {@link IOException}, after which the reader resumes with
+ * the following code.
+ * <p>
+ * Unlike most classes in this package, instances of this class are mutable
+ * and are not threadsafe. Readers are obtained from
+ * {@link Keycode.Format#reader(Reader)}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Format format;
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final char[] chars;
+	private final CharBuffer view;
+	private final byte[] key;
+	private int position = 0;
+	private int limit = 0;
+	private long count = 0L;
+
+	KeycodeReader(Format format, Reader reader) {
+		this.format = format;
+		this.reader = reader;
+		chars = new char[format.codeChars];
+		view = CharBuffer.wrap(chars);
+		key = new byte[format.keyLength];
+	}
+
+	/**
+	 * The format of the keycodes returned by this reader.
+	 * 
+	 * @return the reader format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * The number of codes that have been read, including any that failed
+	 * to parse.
+	 * 
+	 * @return the number of codes read
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Reads the next keycode.
+	 * 
+	 * @throws IOException
+	 *             if the underlying reader raises an exception, if the next
+	 *             code is invalid, or if the stream ends part way through a
+	 *             code
+	 * @return the next keycode with the format of this reader, or null if
+	 *         the end of the stream has been reached
+	 */
+
+	public Keycode read() throws IOException {
+		int tag = readKey(key, 0);
+		return tag < 0 ? null : new Keycode(format, key, 0, (byte) tag, null);
+	}
+
+	/**
+	 * Reads the key and tag of the next keycode, without creating a
+	 * keycode.
+	 * 
+	 * @param key
+	 *            an array into which the key data is written, 32 bytes
+	 *            unless the format has a different key size
+	 * @param offset
+	 *            the index at which the key data is written
+	 * @throws IllegalArgumentException
+	 *             if the array cannot accommodate the key data at the offset
+	 * @throws IOException
+	 *             if the underlying reader raises an exception, if the next
+	 *             code is invalid, or if the stream ends part way through a
+	 *             code
+	 * @return the tag of the keycode, or -1 if the end of the stream has
+	 *         been reached
+	 */
+
+	public int readKey(byte[] key, int offset) throws IOException {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		int keyLength = format.keyLength;
+		if (offset + keyLength > key.length) throw new IllegalArgumentException("insufficient space for key");
+		int length = 0;
+		while (length < chars.length) {
+			if (position == limit) {
+				limit = reader.read(buffer);
+				position = 0;
+				if (limit < 0) {
+					limit = 0;
+					if (length == 0) return -1;
+					count++;
+					throw new IOException("truncated keycode " + count + ": " + length + " characters");
+				}
+			}
+			char c = buffer[position++];
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			chars[length++] = c;
+		}
+		count++;
+		long start = Instrumentation.ENABLED ? Instrumentation.start() : 0L;
+		int result = Keycode.decode(chars, 0, keyLength, key, offset);
+		if (Instrumentation.ENABLED) Instrumentation.parsed(result, keyLength, start);
+		if (result < 0) throw new IOException("invalid keycode " + count + ": " + Keycode.message(result, view, format.rows));
+		return result;
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 */
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Keycode.load;
+
+/**
+ * <p>
+ * A set of 256 bit keys, each combined with a 7 bit tag, that is stored
+ * outside the Java heap so that very large numbers of keys can be held
+ * without the per-entry overhead of a {@code HashSet<Keycode>} or its cost
+ * to the garbage collector. Each key occupies 40 bytes of direct memory in a
+ * table that is kept at most three quarters full.
+ * <p>
+ * Keys are identified by their key data and tag only; keycodes with
+ * different formats but the same key and tag are the same member. Since keys
+ * are expected to be random, the key data itself is used to position the key
+ * in the table; sets of keys that are not uniformly distributed will perform
+ * poorly. Keycodes with formats for keys of other sizes are rejected.
+ * <p>
+ * Instances of this class are threadsafe. The set is divided into
+ * independently locked stripes, and lookups in the same stripe do not block
+ * each other.
+ * 
+ * @author tomgibara
+ * @see KeycodeMap
+ */
+
+public final class KeycodeSet {
+
+	private final KeycodeTable table;
+
+	/**
+	 * Creates an empty set with space for the expected number of keys. The
+	 * set grows as necessary, but growth temporarily requires additional
+	 * memory and blocks access to part of the set.
+	 * 
+	 * @param expectedSize
+	 *            the number of keys that the set is expected to hold
+	 * @throws IllegalArgumentException
+	 *             if the expected size is negative
+	 */
+
+	public KeycodeSet(long expectedSize) {
+		if (expectedSize < 0L) throw new IllegalArgumentException("negative expectedSize");
+		table = new KeycodeTable(expectedSize, false);
+	}
+
+	/**
+	 * The number of keys in the set.
+	 * 
+	 * @return the size of the set
+	 */
+
+	public long size() {
+		return table.size();
+	}
+
+	/**
+	 * Removes every key from the set and releases the memory it occupied.
+	 */
+
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * Adds the key and tag of a keycode to the set.
+	 * 
+	 * @param keycode
+	 *            the keycode to add
+	 * @throws IllegalStateException
+	 *             if the set cannot grow to accommodate the key
+	 * @return true if the set did not already contain the key
+	 */
+
+	public boolean add(Keycode keycode) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.put(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag(), 0L);
+	}
+
+	/**
+	 * Adds a key and tag to the set.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @throws IllegalStateException
+	 *             if the set cannot grow to accommodate the key
+	 * @return true if the set did not already contain the key
+	 */
+
+	public boolean add(byte[] key, byte tag) {
+		checkKey(key, tag);
+		return table.put(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag, 0L);
+	}
+
+	/**
+	 * Whether the set contains the key and tag of a keycode.
+	 * 
+	 * @param keycode
+	 *            a keycode
+	 * @return true if the set contains the key
+	 */
+
+	public boolean contains(Keycode keycode) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.contains(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag());
+	}
+
+	/**
+	 * Whether the set contains a key and tag.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @return true if the set contains the key
+	 */
+
+	public boolean contains(byte[] key, byte tag) {
+		checkKey(key, tag);
+		return table.contains(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag);
+	}
+
+	/**
+	 * Whether the set contains the key and tag of a code. The code is parsed
+	 * as if by {@link Keycode.Format#parse(CharSequence)}, but no keycode is
+	 * created, and codes that fail to parse are simply not contained in the
+	 * set.
+	 * 
+	 * @param code
+	 *            the character data of the code, typically a String
+	 * @return true if the code is valid and the set contains its key
+	 */
+
+	public boolean contains(CharSequence code) {
+		if (code == null) throw new IllegalArgumentException("null code");
+		byte[] key = new byte[32];
+		int tag = Keycode.parse(code, 32, key, 0);
+		return tag >= 0 && table.contains(load(key, 0), load(key, 8), load(key, 16), load(key, 24), (byte) tag);
+	}
+
+	/**
+	 * Removes the key and tag of a keycode from the set.
+	 * 
+	 * @param keycode
+	 *            the keycode to remove
+	 * @return true if the set contained the key
+	 */
+
+	public boolean remove(Keycode keycode) {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != 32) throw new IllegalArgumentException("unsupported key size");
+		return table.remove(keycode.keyWord(0), keycode.keyWord(1), keycode.keyWord(2), keycode.keyWord(3), keycode.getTag());
+	}
+
+	/**
+	 * Removes a key and tag from the set.
+	 * 
+	 * @param key
+	 *            a 32 byte array containing key data
+	 * @param tag
+	 *            a non-negative tag
+	 * @throws IllegalArgumentException
+	 *             if the array is not 32 bytes long or the tag is negative
+	 * @return true if the set contained the key
+	 */
+
+	public boolean remove(byte[] key, byte tag) {
+		checkKey(key, tag);
+		return table.remove(load(key, 0), load(key, 8), load(key, 16), load(key, 24), tag);
+	}
+
+	static void checkKey(byte[] key, byte tag) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length != 32) throw new IllegalArgumentException("invalid key length");
+		if (tag < 0) throw new IllegalArgumentException("negative tag");
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.tomgibara.keycode.Keycode.Failure;
+
+/*
+ * Accumulates the statistics exposed through KeycodeStatsMXBean. Counts are
+ * maintained with atomic operations, so recording never blocks; a snapshot
+ * taken while codes are being parsed may be marginally inconsistent.
+ */
+
+final class KeycodeStats implements KeycodeStatsMXBean {
+
+	// the number of buckets in the latency histogram, the last covers ~9 minutes and above
+	static final int BUCKETS = 40;
+
+	private static final Failure[] FAILURES = Failure.values();
+
+	private final AtomicLong parses = new AtomicLong();
+	// parses of keycodes for 256 bit keys, the only keycodes for which checksum failures are counted by row
+	private final AtomicLong rowParses = new AtomicLong();
+	private final AtomicLong encodes = new AtomicLong();
+	private final AtomicLong parseNanos = new AtomicLong();
+	private final AtomicLongArray failures = new AtomicLongArray(FAILURES.length);
+	private final AtomicLongArray checksums = new AtomicLongArray(7);
+	private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+	// the histogram bucket for a latency
+	static int bucket(long nanos) {
+		return nanos <= 0L ? 0 : Math.min(63 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+	}
+
+	void parsed(int result, int keyLength, long nanos) {
+		parses.incrementAndGet();
+		parseNanos.addAndGet(nanos);
+		latencies.incrementAndGet(bucket(nanos));
+		// rows of other key sizes do not correspond, so they are not counted
+		boolean byRow = keyLength == 32;
+		if (byRow) rowParses.incrementAndGet();
+		if (result < 0) {
+			Failure failure = Failure.of(result);
+			failures.incrementAndGet(failure.ordinal());
+			if (byRow && failure == Failure.INVALID_CHECKSUM) checksums.incrementAndGet(Failure.row(result) - 1);
+		}
+	}
+
+	void encoded() {
+		encodes.incrementAndGet();
+	}
+
+	@Override
+	public long getParseCount() {
+		return parses.get();
+	}
+
+	@Override
+	public long getParseFailureCount() {
+		long sum = 0L;
+		for (int i = 0; i < FAILURES.length; i++) {
+			sum += failures.get(i);
+		}
+		return sum;
+	}
+
+	@Override
+	public long getEncodeCount() {
+		return encodes.get();
+	}
+
+	@Override
+	public Map<String, Long> getFailureCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < FAILURES.length; i++) {
+			counts.put(FAILURES[i].name(), failures.get(i));
+		}
+		return counts;
+	}
+
+	@Override
+	public long[] getChecksumFailuresByRow() {
+		return toArray(checksums);
+	}
+
+	@Override
+	public double[] getChecksumFailureRatesByRow() {
+		long count = rowParses.get();
+		double[] rates = new double[7];
+		if (count == 0L) return rates;
+		for (int i = 0; i < 7; i++) {
+			rates[i] = checksums.get(i) / (double) count;
+		}
+		return rates;
+	}
+
+	@Override
+	public long[] getParseLatencyHistogram() {
+		return toArray(latencies);
+	}
+
+	@Override
+	public double getMeanParseNanos() {
+		long count = parses.get();
+		return count == 0L ? 0.0 : parseNanos.get() / (double) count;
+	}
+
+	@Override
+	public void reset() {
+		parses.set(0L);
+		rowParses.set(0L);
+		encodes.set(0L);
+		parseNanos.set(0L);
+		clear(failures);
+		clear(checksums);
+		clear(latencies);
+	}
+
+	private static long[] toArray(AtomicLongArray array) {
+		long[] values = new long[array.length()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = array.get(i);
+		}
+		return values;
+	}
+
+	private static void clear(AtomicLongArray array) {
+		for (int i = 0; i < array.length(); i++) {
+			array.set(i, 0L);
+		}
+	}
+
+}
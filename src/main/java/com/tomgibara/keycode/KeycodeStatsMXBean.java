@@ -0,0 +1,135 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * The management interface through which parsing and encoding statistics are
+ * exposed when instrumentation is enabled, by starting the JVM with the system
+ * property {@value #ENABLED_PROPERTY} set to {@code true}. The statistics are
+ * registered with the platform MBean server under the name
+ * {@value #OBJECT_NAME}.
+ * <p>
+ * Parses are counted for all of the parsing and validation methods of
+ * {@link Keycode.Format} and the classes built on them, and for keycodes read
+ * with a {@link KeycodeReader}; batch decoding and incremental parsing are not
+ * counted. Encodes are counted each time the characters of a keycode are
+ * generated.
+ * <p>
+ * When instrumentation is not enabled, no statistics are gathered and parsing
+ * is not measured.
+ * 
+ * @author tomgibara
+ */
+
+public interface KeycodeStatsMXBean {
+
+	/**
+	 * The system property which enables instrumentation.
+	 */
+
+	String ENABLED_PROPERTY = "com.tomgibara.keycode.instrument";
+
+	/**
+	 * The name under which the statistics are registered.
+	 */
+
+	String OBJECT_NAME = "com.tomgibara.keycode:type=KeycodeStats";
+
+	/**
+	 * The number of codes parsed, successfully or not.
+	 * 
+	 * @return the number of parses
+	 */
+
+	long getParseCount();
+
+	/**
+	 * The number of codes that failed to parse.
+	 * 
+	 * @return the number of failed parses
+	 */
+
+	long getParseFailureCount();
+
+	/**
+	 * The number of keycodes encoded into characters.
+	 * 
+	 * @return the number of encodes
+	 */
+
+	long getEncodeCount();
+
+	/**
+	 * The number of failed parses for each reason, keyed by the name of the
+	 * {@link Keycode.Failure}.
+	 * 
+	 * @return the failure counts for every kind of failure
+	 */
+
+	Map<String, Long> getFailureCounts();
+
+	/**
+	 * The number of checksum failures in each row of keycodes for 256 bit
+	 * keys, the first element being the count for the first row and the last
+	 * the count for the last row of digits. Keycodes for other key sizes have
+	 * different rows, and their checksum failures are not included.
+	 * 
+	 * @return an array of seven counts
+	 */
+
+	long[] getChecksumFailuresByRow();
+
+	/**
+	 * The proportion of parses of keycodes for 256 bit keys that failed the
+	 * checksum of each row, indexed as for
+	 * {@link #getChecksumFailuresByRow()}.
+	 * 
+	 * @return an array of seven rates between zero and one
+	 */
+
+	double[] getChecksumFailureRatesByRow();
+
+	/**
+	 * A histogram of parse latencies with power-of-two buckets. The element at
+	 * index i counts parses which took at least 2^i nanoseconds but less than
+	 * 2^(i+1); the first bucket also counts parses of less than a nanosecond
+	 * and the last all parses that took longer.
+	 * 
+	 * @return the counts in each bucket of the histogram
+	 */
+
+	long[] getParseLatencyHistogram();
+
+	/**
+	 * The mean time taken to parse a code.
+	 * 
+	 * @return the mean parse latency in nanoseconds, or zero if no codes have
+	 *         been parsed
+	 */
+
+	double getMeanParseNanos();
+
+	/**
+	 * Sets all of the statistics back to zero.
+	 */
+
+	void reset();
+
+}
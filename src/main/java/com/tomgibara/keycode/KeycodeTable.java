@@ -0,0 +1,233 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+	An open addressing hash table of keys and tags, optionally with a long
+	value per entry, held outside the heap in direct buffers. Each slot holds
+	the four longs of the key, a control word that is zero for empty slots,
+	and the value if any. Collisions are resolved by linear probing and
+	removal shifts entries backwards, so there are no tombstones.
+
+	The table is divided into stripes, each of which is guarded by its own
+	read-write lock and grows independently. Since keys are random, the most
+	significant bits of the first key word select the stripe and its least
+	significant bits select the slot.
+*/
+
+final class KeycodeTable {
+
+	private static final int STRIPE_BITS = 6;
+	private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+	private static final int MIN_CAPACITY = 16;
+	// the largest power of two that keeps the buffer of every stripe below 2GB
+	private static final int MAX_CAPACITY = 1 << 25;
+
+	private static final int CONTROL = 32;
+	private static final int VALUE = 40;
+	// the control word of an occupied slot is the tag with this bit set
+	private static final long OCCUPIED = 0x100L;
+
+	private static final class Stripe {
+
+		final Lock readLock;
+		final Lock writeLock;
+		ByteBuffer buffer;
+		int mask;
+		volatile int size = 0;
+
+		Stripe(int capacity, int slotLength) {
+			ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+			readLock = lock.readLock();
+			writeLock = lock.writeLock();
+			allocate(capacity, slotLength);
+		}
+
+		void allocate(int capacity, int slotLength) {
+			buffer = ByteBuffer.allocateDirect(capacity * slotLength).order(ByteOrder.nativeOrder());
+			mask = capacity - 1;
+		}
+
+	}
+
+	private final int slotLength;
+	private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+	KeycodeTable(long expectedSize, boolean values) {
+		slotLength = values ? 48 : 40;
+		// sized so that the expected entries do not trigger growth
+		long perStripe = expectedSize / STRIPE_COUNT * 4 / 3 + 1;
+		int capacity = MIN_CAPACITY;
+		while (capacity < perStripe && capacity < MAX_CAPACITY) capacity <<= 1;
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			stripes[i] = new Stripe(capacity, slotLength);
+		}
+	}
+
+	long size() {
+		long size = 0L;
+		for (Stripe stripe : stripes) {
+			size += stripe.size;
+		}
+		return size;
+	}
+
+	void clear() {
+		for (Stripe stripe : stripes) {
+			stripe.writeLock.lock();
+			try {
+				stripe.allocate(MIN_CAPACITY, slotLength);
+				stripe.size = 0;
+			} finally {
+				stripe.writeLock.unlock();
+			}
+		}
+	}
+
+	boolean contains(long k0, long k1, long k2, long k3, byte tag) {
+		Stripe stripe = stripe(k0);
+		stripe.readLock.lock();
+		try {
+			return find(stripe, k0, k1, k2, k3, tag) >= 0;
+		} finally {
+			stripe.readLock.unlock();
+		}
+	}
+
+	long get(long k0, long k1, long k2, long k3, byte tag, long absent) {
+		Stripe stripe = stripe(k0);
+		stripe.readLock.lock();
+		try {
+			int slot = find(stripe, k0, k1, k2, k3, tag);
+			return slot < 0 ? absent : stripe.buffer.getLong(slot * slotLength + VALUE);
+		} finally {
+			stripe.readLock.unlock();
+		}
+	}
+
+	// returns true if the entry was added, the value of an existing entry is replaced
+	boolean put(long k0, long k1, long k2, long k3, byte tag, long value) {
+		Stripe stripe = stripe(k0);
+		stripe.writeLock.lock();
+		try {
+			int slot = find(stripe, k0, k1, k2, k3, tag);
+			if (slot >= 0) {
+				if (slotLength > VALUE) stripe.buffer.putLong(slot * slotLength + VALUE, value);
+				return false;
+			}
+			int size = stripe.size;
+			if (size >= (stripe.mask + 1) / 4 * 3) {
+				grow(stripe);
+				slot = find(stripe, k0, k1, k2, k3, tag);
+			}
+			write(stripe.buffer, ~slot * slotLength, k0, k1, k2, k3, OCCUPIED | tag, value);
+			stripe.size = size + 1;
+			return true;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	boolean remove(long k0, long k1, long k2, long k3, byte tag) {
+		Stripe stripe = stripe(k0);
+		stripe.writeLock.lock();
+		try {
+			int slot = find(stripe, k0, k1, k2, k3, tag);
+			if (slot < 0) return false;
+			ByteBuffer buffer = stripe.buffer;
+			int mask = stripe.mask;
+			// shift back any later entries in the probe sequence that would be stranded
+			int i = slot;
+			for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+				int from = j * slotLength;
+				if (buffer.getLong(from + CONTROL) == 0L) break;
+				int home = (int) buffer.getLong(from) & mask;
+				// skip entries whose home lies cyclically within (i, j]
+				if (i <= j ? i < home && home <= j : i < home || home <= j) continue;
+				copy(buffer, from, i * slotLength);
+				i = j;
+			}
+			buffer.putLong(i * slotLength + CONTROL, 0L);
+			stripe.size--;
+			return true;
+		} finally {
+			stripe.writeLock.unlock();
+		}
+	}
+
+	private Stripe stripe(long k0) {
+		return stripes[(int) (k0 >>> (64 - STRIPE_BITS))];
+	}
+
+	// the slot holding the entry, or the complement of the empty slot at which it would be placed
+	private int find(Stripe stripe, long k0, long k1, long k2, long k3, byte tag) {
+		ByteBuffer buffer = stripe.buffer;
+		int mask = stripe.mask;
+		long control = OCCUPIED | tag;
+		for (int slot = (int) k0 & mask; ; slot = (slot + 1) & mask) {
+			int i = slot * slotLength;
+			long c = buffer.getLong(i + CONTROL);
+			if (c == 0L) return ~slot;
+			if (
+					c == control &&
+					buffer.getLong(i     ) == k0 &&
+					buffer.getLong(i +  8) == k1 &&
+					buffer.getLong(i + 16) == k2 &&
+					buffer.getLong(i + 24) == k3
+					) return slot;
+		}
+	}
+
+	private void grow(Stripe stripe) {
+		int capacity = stripe.mask + 1;
+		if (capacity == MAX_CAPACITY) throw new IllegalStateException("table capacity exceeded");
+		ByteBuffer old = stripe.buffer;
+		stripe.allocate(capacity * 2, slotLength);
+		ByteBuffer buffer = stripe.buffer;
+		int mask = stripe.mask;
+		for (int i = 0; i < capacity * slotLength; i += slotLength) {
+			if (old.getLong(i + CONTROL) == 0L) continue;
+			int slot = (int) old.getLong(i) & mask;
+			while (buffer.getLong(slot * slotLength + CONTROL) != 0L) slot = (slot + 1) & mask;
+			int to = slot * slotLength;
+			for (int j = 0; j < slotLength; j += 8) {
+				buffer.putLong(to + j, old.getLong(i + j));
+			}
+		}
+	}
+
+	private void write(ByteBuffer buffer, int i, long k0, long k1, long k2, long k3, long control, long value) {
+		buffer.putLong(i     , k0);
+		buffer.putLong(i +  8, k1);
+		buffer.putLong(i + 16, k2);
+		buffer.putLong(i + 24, k3);
+		buffer.putLong(i + CONTROL, control);
+		if (slotLength > VALUE) buffer.putLong(i + VALUE, value);
+	}
+
+	private void copy(ByteBuffer buffer, int from, int to) {
+		for (int j = 0; j < slotLength; j += 8) {
+			buffer.putLong(to + j, buffer.getLong(from + j));
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * Writes keycodes to a stream of characters in a single format. In formats
+ * with a line separator, each keycode is followed by a blank line; otherwise
+ * each keycode is written on its own line, terminated by a newline. The
+ * output can be read with a {@link KeycodeReader}.
+ * <p>
+ * Keycodes are formatted into a fixed size buffer which is written to the
+ * underlying writer when full, and no strings are created for the keycodes
+ * that are written.
+ * <p>
+ * Unlike most classes in this package, instances of this class are mutable
+ * and are not threadsafe. Writers are obtained from
+ * {@link Keycode.Format#writer(Writer)}.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Format format;
+	private final Writer writer;
+	private final String terminator;
+	// the characters of a keycode followed by its terminator
+	private final int recordLength;
+	private final char[] buffer;
+	private int position = 0;
+
+	KeycodeWriter(Format format, Writer writer) {
+		this.format = format;
+		this.writer = writer;
+		String lineSep = format.lineSeparator;
+		terminator = lineSep.isEmpty() ? "\n" : lineSep + lineSep;
+		recordLength = format.getCodeLength() + terminator.length();
+		buffer = new char[Math.max(BUFFER_SIZE, recordLength)];
+	}
+
+	/**
+	 * The format in which keycodes are written.
+	 * 
+	 * @return the writer format
+	 */
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Writes a keycode in the format of this writer, irrespective of the
+	 * format of the keycode, which must have the same key size.
+	 * 
+	 * @param keycode
+	 *            the keycode to write
+	 * @throws IllegalArgumentException
+	 *             if the keycode has a different key size
+	 * @throws IOException
+	 *             if the underlying writer raises an exception
+	 */
+
+	public void write(Keycode keycode) throws IOException {
+		if (keycode == null) throw new IllegalArgumentException("null keycode");
+		if (keycode.getFormat().keyLength != format.keyLength) throw new IllegalArgumentException("mismatched key size");
+		ensureSpace();
+		keycode.codeTo(buffer, position);
+		format.spread(buffer, position);
+		terminate();
+	}
+
+	/**
+	 * Writes a key and tag as a keycode in the format of this writer,
+	 * without creating a keycode.
+	 * 
+	 * @param key
+	 *            an array containing key data
+	 * @param offset
+	 *            the index at which the key data starts
+	 * @param tag
+	 *            a 7 bit value that augments the key data
+	 * @throws IllegalArgumentException
+	 *             if the key array does not contain a whole key at the
+	 *             offset, or if the tag is negative
+	 * @throws IOException
+	 *             if the underlying writer raises an exception
+	 */
+
+	public void writeKey(byte[] key, int offset, byte tag) throws IOException {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (offset + format.keyLength > key.length) throw new IllegalArgumentException("insufficient key data");
+		if (tag < 0) throw new IllegalArgumentException("negative tag");
+		ensureSpace();
+		Keycode.encode(key, offset, format.keyLength, tag, buffer, position);
+		format.spread(buffer, position);
+		terminate();
+	}
+
+	/**
+	 * Writes any buffered characters and flushes the underlying writer.
+	 */
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+		writer.flush();
+	}
+
+	/**
+	 * Writes any buffered characters and closes the underlying writer.
+	 */
+
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void ensureSpace() throws IOException {
+		if (position + recordLength > buffer.length) drain();
+	}
+
+	private void terminate() {
+		position += recordLength - terminator.length();
+		terminator.getChars(0, terminator.length(), buffer, position);
+		position += terminator.length();
+	}
+
+	private void drain() throws IOException {
+		if (position == 0) return;
+		writer.write(buffer, 0, position);
+		position = 0;
+	}
+
+}
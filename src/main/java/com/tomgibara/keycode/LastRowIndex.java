@@ -0,0 +1,199 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.util.List;
+
+import com.tomgibara.keycode.Keycode.Failure;
+
+/**
+ * <p>
+ * Finds the keys whose keycodes end with a given last row. The last row of a
+ * keycode consists only of digits, so that it can easily be read aloud, and
+ * it is determined by the last two bytes of the key together with the tag.
+ * This index allows a last row that has been read out, for example over the
+ * phone, to be checked against a large number of stored keys.
+ * <p>
+ * Since the last row encodes only 23 bits, many keys may share the same last
+ * row, and a match is only a partial verification of a key. The index
+ * records the position of each key in the list or batch from which it was
+ * built, and lookups return these positions. Lookups take constant time, on
+ * average, and no keycodes are encoded.
+ * <p>
+ * Instances of this class are immutable and threadsafe.
+ * 
+ * @author tomgibara
+ * @see Keycode.Format#lastRow(byte[], byte)
+ */
+
+public final class LastRowIndex {
+
+	private static final int VALUE_BITS = 23;
+	private static final int[] NO_INDICES = {};
+
+	// identifies a last row, by the last two bytes of the key and the tag
+	static int value(int key30, int key31, int tag) {
+		return (key30 & 0xff) << 15 | (key31 & 0xff) << 7 | tag;
+	}
+
+	// the value of a last row, which may contain whitespace
+	private static int value(CharSequence lastRow) {
+		char[] chars = new char[9];
+		int count = 0;
+		int length = lastRow.length();
+		for (int i = 0; i < length; i++) {
+			char c = lastRow.charAt(i);
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			if (count == 9) throw new IllegalArgumentException("long last row");
+			chars[count++] = c;
+		}
+		if (count < 9) throw new IllegalArgumentException("short last row");
+		// the row is checked as if it were at the end of a code
+		byte[] key = new byte[32];
+		int result = Keycode.checkLastRow(chars, -54);
+		if (result >= 0) result = Keycode.decodeLastRow(chars, -54, key, 0);
+		if (result < 0) {
+			// reported as Keycode reports failures, with positions within the row
+			result = Failure.result(Failure.of(result), 7, Failure.position(result) - 54);
+			throw new IllegalArgumentException("invalid last row: " + Keycode.message(result, lastRow, 7));
+		}
+		return value(key[30], key[31], result);
+	}
+
+	/**
+	 * Indexes the last rows of a list of keycodes, which may have keys of
+	 * any size.
+	 * 
+	 * @param keycodes
+	 *            the keycodes to index
+	 * @throws IllegalArgumentException
+	 *             if any keycode is null
+	 * @return an index that identifies keycodes by their position in the
+	 *         list
+	 */
+
+	public static LastRowIndex of(List<Keycode> keycodes) {
+		if (keycodes == null) throw new IllegalArgumentException("null keycodes");
+		int size = keycodes.size();
+		int[] values = new int[size];
+		int i = 0;
+		for (Keycode keycode : keycodes) {
+			if (keycode == null) throw new IllegalArgumentException("null keycode");
+			long word = keycode.lastWord();
+			values[i++] = value((int) (word >> 8), (int) word, keycode.getTag());
+		}
+		return new LastRowIndex(values, null);
+	}
+
+	/**
+	 * Indexes the last rows of the keys in a batch. Entries that did not
+	 * decode successfully are excluded. Subsequent changes to the batch are
+	 * not reflected in the index.
+	 * 
+	 * @param batch
+	 *            the batch of keys to index
+	 * @return an index that identifies keys by their index in the batch
+	 */
+
+	public static LastRowIndex of(KeycodeBatch batch) {
+		if (batch == null) throw new IllegalArgumentException("null batch");
+		int size = batch.size();
+		int count = batch.validCount();
+		int[] values = new int[count];
+		int[] indices = new int[count];
+		for (int i = 0, j = 0; i < size; i++) {
+			if (!batch.isValid(i)) continue;
+			values[j] = batch.lastRowValue(i);
+			indices[j++] = i;
+		}
+		return new LastRowIndex(values, indices);
+	}
+
+	// the values and indices are bucketed by the top bits of the values
+	private final int shift;
+	private final int[] offsets;
+	private final int[] values;
+	private final int[] indices;
+
+	// indices may be null, in which case they are the positions of the values
+	private LastRowIndex(int[] values, int[] indices) {
+		int size = values.length;
+		// around one key per bucket
+		int bits = Math.min(VALUE_BITS, 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 0)));
+		shift = VALUE_BITS - bits;
+		offsets = new int[(1 << bits) + 1];
+		this.values = new int[size];
+		this.indices = new int[size];
+		// a stable counting sort, so that the indices in each bucket remain ascending
+		for (int value : values) {
+			offsets[(value >> shift) + 1]++;
+		}
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+		int[] next = offsets.clone();
+		for (int i = 0; i < size; i++) {
+			int value = values[i];
+			int j = next[value >> shift]++;
+			this.values[j] = value;
+			this.indices[j] = indices == null ? i : indices[i];
+		}
+	}
+
+	/**
+	 * The number of keys in the index.
+	 * 
+	 * @return the size of the index
+	 */
+
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Finds the keys with a given last row. The last row must consist of
+	 * nine digits, which may be grouped with whitespace, and must be valid.
+	 * 
+	 * @param lastRow
+	 *            the characters of the last row of a keycode
+	 * @throws IllegalArgumentException
+	 *             if the last row is not valid
+	 * @return the indices of the matching keys in ascending order, possibly
+	 *         empty
+	 */
+
+	public int[] lookup(CharSequence lastRow) {
+		if (lastRow == null) throw new IllegalArgumentException("null lastRow");
+		int value = value(lastRow);
+		int bucket = value >> shift;
+		int from = offsets[bucket];
+		int to = offsets[bucket + 1];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (values[i] == value) count++;
+		}
+		if (count == 0) return NO_INDICES;
+		int[] matches = new int[count];
+		for (int i = from, j = 0; j < count; i++) {
+			if (values[i] == value) matches[j++] = indices[i];
+		}
+		return matches;
+	}
+
+}
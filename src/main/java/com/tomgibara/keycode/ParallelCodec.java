@@ -0,0 +1,179 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.tomgibara.keycode.Keycode.Format;
+import com.tomgibara.keycode.ParsedKeycodes.KeycodeList;
+
+/*
+ * Parses and encodes many keycodes in parallel using fork/join. Work is
+ * divided by recursively halving index ranges so that results can be written
+ * directly into arrays in input order.
+ * 
+ * Tasks run in the current pool when invoked from a fork/join worker and
+ * otherwise in a shared pool of daemon threads, sized to the number of
+ * available processors, that is created on first use.
+ */
+
+final class ParallelCodec {
+
+	// the smallest number of codes worth processing as a separate task
+	private static final int MIN_LEAF = 32;
+
+	private static final class Shared {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	interface Job {
+		void perform(int index);
+	}
+
+	private static final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Job job;
+		private final int from;
+		private final int to;
+		private final int leaf;
+
+		RangeTask(Job job, int from, int to, int leaf) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leaf) {
+				for (int i = from; i < to; i++) {
+					job.perform(i);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RangeTask(job, from, mid, leaf), new RangeTask(job, mid, to, leaf));
+			}
+		}
+	}
+
+	static void perform(Job job, int count) {
+		if (count == 0) return;
+		boolean nested = ForkJoinTask.inForkJoinPool();
+		ForkJoinPool pool = nested ? ForkJoinTask.getPool() : Shared.POOL;
+		// a few tasks per thread evens out the load
+		int leaf = Math.max(MIN_LEAF, count / (pool.getParallelism() * 4));
+		RangeTask task = new RangeTask(job, 0, count, leaf);
+		if (nested) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	// the start and end index of each code, delimited by the number of significant characters in a code
+	// a final partial code is included so that it is reported as a failure
+	static int[] bounds(CharSequence codes, int codeChars) {
+		int[] bounds = new int[16];
+		int count = 0;
+		int significant = 0;
+		int start = 0;
+		int end = 0;
+		int length = codes.length();
+		for (int i = 0; i < length; i++) {
+			char c = codes.charAt(i);
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			if (significant == 0) start = i;
+			end = i + 1;
+			if (++significant == codeChars) {
+				if (count == bounds.length) bounds = Arrays.copyOf(bounds, count * 2);
+				bounds[count++] = start;
+				bounds[count++] = end;
+				significant = 0;
+			}
+		}
+		if (significant > 0) {
+			if (count == bounds.length) bounds = Arrays.copyOf(bounds, count + 2);
+			bounds[count++] = start;
+			bounds[count++] = end;
+		}
+		return Arrays.copyOf(bounds, count);
+	}
+
+	static ParsedKeycodes parseAll(final Format format, final CharSequence codes) {
+		final int[] bounds = bounds(codes, format.codeChars);
+		int count = bounds.length / 2;
+		final Keycode[] keycodes = new Keycode[count];
+		final String[] failures = new String[count];
+		perform(new Job() {
+			@Override
+			public void perform(int index) {
+				String code = codes.subSequence(bounds[2 * index], bounds[2 * index + 1]).toString();
+				keycodes[index] = format.parse(code, failures, index);
+			}
+		}, count);
+		return new ParsedKeycodes(keycodes, failures);
+	}
+
+	static ParsedKeycodes parseAll(final Format format, List<? extends CharSequence> codes) {
+		final CharSequence[] array = codes.toArray(new CharSequence[codes.size()]);
+		for (CharSequence code : array) {
+			if (code == null) throw new IllegalArgumentException("null code");
+		}
+		int count = array.length;
+		final Keycode[] keycodes = new Keycode[count];
+		final String[] failures = new String[count];
+		perform(new Job() {
+			@Override
+			public void perform(int index) {
+				keycodes[index] = format.parse(array[index].toString(), failures, index);
+			}
+		}, count);
+		return new ParsedKeycodes(keycodes, failures);
+	}
+
+	static List<Keycode> encodeAll(final Format format, List<byte[]> keys) {
+		final byte[][] array = keys.toArray(new byte[keys.size()][]);
+		for (byte[] key : array) {
+			if (key == null) throw new IllegalArgumentException("null key");
+			if (key.length != format.keyLength) throw new IllegalArgumentException("invalid key length");
+		}
+		final Keycode[] keycodes = new Keycode[array.length];
+		perform(new Job() {
+			@Override
+			public void perform(int index) {
+				// keycodes are otherwise encoded lazily, so the code and text are computed here
+				byte[] key = array[index];
+				char[] chars = new char[format.codeChars];
+				Keycode.encode(key, 0, key.length, (byte) 0, chars, 0);
+				Keycode keycode = new Keycode(format, key, 0, (byte) 0, new String(chars));
+				keycode.toString();
+				keycodes[index] = keycode;
+			}
+		}, array.length);
+		return new KeycodeList(keycodes);
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+/*
+ * Reports notable parses to the flight recorder on behalf of Instrumentation.
+ * 
+ * This version of the class does nothing, since the flight recorder API is not
+ * available before Java 11. Multi-release jars also contain a Java 17 version
+ * of this class (see src/main/java17) which commits custom JFR events.
+ */
+
+final class ParseEvents {
+
+	static void failed(int result, long nanos) { }
+
+	static void slow(long nanos) { }
+
+	private ParseEvents() { }
+
+}
@@ -0,0 +1,174 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * The outcome of parsing many keycodes at once with
+ * {@link Keycode.Format#parseAll(CharSequence)} or
+ * {@link Keycode.Format#parseAll(List)}. Failures do not abort parsing;
+ * instead the outcome records, for each code in the input, either the
+ * keycode that was parsed or the reason that parsing failed. Codes are
+ * indexed in the order in which they were supplied.
+ * <p>
+ * Instances of this class are immutable and threadsafe.
+ * 
+ * @author tomgibara
+ */
+
+public final class ParsedKeycodes {
+
+	private final Keycode[] keycodes;
+	private final String[] failures;
+	private final int validCount;
+
+	ParsedKeycodes(Keycode[] keycodes, String[] failures) {
+		this.keycodes = keycodes;
+		this.failures = failures;
+		int count = 0;
+		for (Keycode keycode : keycodes) {
+			if (keycode != null) count++;
+		}
+		validCount = count;
+	}
+
+	/**
+	 * The number of codes that were parsed, whether successfully or not.
+	 * 
+	 * @return the number of codes
+	 */
+
+	public int size() {
+		return keycodes.length;
+	}
+
+	/**
+	 * The number of codes that were parsed successfully.
+	 * 
+	 * @return the number of valid codes
+	 */
+
+	public int validCount() {
+		return validCount;
+	}
+
+	/**
+	 * Whether the code at the specified index was parsed successfully.
+	 * 
+	 * @param index
+	 *            the index of a code
+	 * @return true if the code was a valid keycode
+	 */
+
+	public boolean isValid(int index) {
+		checkIndex(index);
+		return keycodes[index] != null;
+	}
+
+	/**
+	 * The keycode parsed from the code at the specified index.
+	 * 
+	 * @param index
+	 *            the index of a code
+	 * @return the keycode, or null if the code was not valid
+	 */
+
+	public Keycode get(int index) {
+		checkIndex(index);
+		return keycodes[index];
+	}
+
+	/**
+	 * The reason that the code at the specified index failed to parse. This
+	 * is the message of the exception that would have been raised by
+	 * {@link Keycode.Format#parse(CharSequence)}.
+	 * 
+	 * @param index
+	 *            the index of a code
+	 * @return the failure message, or null if the code was valid
+	 */
+
+	public String getFailure(int index) {
+		checkIndex(index);
+		return failures[index];
+	}
+
+	/**
+	 * The keycodes that were parsed successfully, in order.
+	 * 
+	 * @return an unmodifiable list of keycodes
+	 */
+
+	public List<Keycode> getKeycodes() {
+		if (validCount == keycodes.length) return new KeycodeList(keycodes);
+		List<Keycode> list = new ArrayList<Keycode>(validCount);
+		for (Keycode keycode : keycodes) {
+			if (keycode != null) list.add(keycode);
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * The failure messages of the codes which did not parse, keyed by the
+	 * index of the code.
+	 * 
+	 * @return an unmodifiable map from code indices to failure messages
+	 */
+
+	public SortedMap<Integer, String> getFailures() {
+		SortedMap<Integer, String> map = new TreeMap<Integer, String>();
+		for (int i = 0; i < failures.length; i++) {
+			if (failures[i] != null) map.put(i, failures[i]);
+		}
+		return Collections.unmodifiableSortedMap(map);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= keycodes.length) throw new IllegalArgumentException("index too large");
+	}
+
+	// an unmodifiable view of an array that is never exposed
+	static final class KeycodeList extends AbstractList<Keycode> implements RandomAccess {
+
+		private final Keycode[] keycodes;
+
+		KeycodeList(Keycode[] keycodes) {
+			this.keycodes = keycodes;
+		}
+
+		@Override
+		public Keycode get(int index) {
+			return keycodes[index];
+		}
+
+		@Override
+		public int size() {
+			return keycodes.length;
+		}
+
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.CHARS_32;
+import static com.tomgibara.keycode.Encoder.VALUES_32;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.tomgibara.keycode.Keycode.Format;
+import com.tomgibara.keycode.ParallelCodec.Job;
+
+/*
+ * Lists the keycodes that match a pattern in which unknown characters are
+ * marked with '?'.
+ * 
+ * Rows are independent, so the matches are the product of the solutions for
+ * each row. For a base32 row the checksum is linear in the values of its
+ * characters: any choice of values for all but one unknown determines the
+ * last, so a row with k unknowns has exactly 32^(k-1) solutions, which are
+ * indexed directly rather than enumerated. The solutions of the last row are
+ * enumerated, pruning on the zero and doubled digit rules and computing, rather
+ * than searching for, the check digit; each is then checked in full. Since the
+ * last row varies fastest, no more than limit of its solutions are needed, and
+ * each is retained as the decimal value of its digits.
+ * 
+ * Matches are ordered by the solutions of successive rows and are decoded in
+ * parallel using fork/join.
+ */
+
+final class Recovery {
+
+	static final char UNKNOWN = '?';
+
+	// the most matches that are returned when no limit is specified
+	static final int MAX_MATCHES = 1 << 20;
+
+	// the number of matches decoded together, so that storage grows with the matches decoded
+	private static final int BLOCK_SIZE = 1 << 14;
+
+	// all matches, failing if there are more than MAX_MATCHES
+	static List<Keycode> recover(Format format, CharSequence pattern) {
+		return recover(format, pattern, MAX_MATCHES, true);
+	}
+
+	// the first matches, up to the limit
+	static List<Keycode> recover(Format format, CharSequence pattern, int limit) {
+		return recover(format, pattern, limit, false);
+	}
+
+	private static List<Keycode> recover(final Format format, CharSequence pattern, int limit, boolean exact) {
+		// gather the significant characters
+		final char[] chars = new char[63];
+		int count = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c < 128 && VALUES_32[c] == -2) continue;
+			if (count == 63) throw new IllegalArgumentException("long pattern");
+			boolean valid = c == UNKNOWN || (count < 54 ? c < 128 && VALUES_32[c] >= 0 : c >= '0' && c <= '9');
+			if (!valid) throw new IllegalArgumentException("invalid character at " + (i + 1));
+			chars[count++] = c;
+		}
+		if (count < 63) throw new IllegalArgumentException("short pattern");
+
+		// count the solutions of each row
+		final long[] sizes = new long[7];
+		final int[][] unknowns = new int[6][];
+		for (int row = 0; row < 6; row++) {
+			unknowns[row] = unknowns(chars, row * 9);
+			int k = unknowns[row].length;
+			if (k == 0) {
+				sizes[row] = TAQG32.verify(chars, row * 9, row * 9 + 9) ? 1 : 0;
+			} else {
+				sizes[row] = 1L << 5 * (k - 1);
+			}
+		}
+		// one more last row than the limit reveals that there are too many matches
+		final int[] lastRows = lastRows(chars, exact ? limit + 1 : limit);
+		sizes[6] = lastRows.length;
+		long total = 1L;
+		for (long size : sizes) {
+			if (size == 0L) return Collections.emptyList();
+		}
+		for (long size : sizes) {
+			boolean over = size > limit || total * size > limit;
+			if (over && exact) throw new IllegalArgumentException("more than " + limit + " matches");
+			total = over ? limit : total * size;
+		}
+
+		// assemble and decode the matches, a block at a time
+		List<Keycode> matches = new ArrayList<>((int) Math.min(total, BLOCK_SIZE));
+		final Keycode[] block = new Keycode[(int) Math.min(total, BLOCK_SIZE)];
+		for (long base = 0L; base < total; base += block.length) {
+			final long first = base;
+			int length = (int) Math.min(block.length, total - base);
+			ParallelCodec.perform(new Job() {
+				@Override
+				public void perform(int index) {
+					block[index] = match(format, chars, sizes, unknowns, lastRows, first + index);
+				}
+			}, length);
+			matches.addAll(Arrays.asList(block).subList(0, length));
+		}
+		return Collections.unmodifiableList(matches);
+	}
+
+	// decodes the indexed match, in which the solution of the last row varies fastest
+	private static Keycode match(Format format, char[] chars, long[] sizes, int[][] unknowns, int[] lastRows, long index) {
+		char[] code = chars.clone();
+		long remaining = index;
+		for (int row = 6; row >= 0; row--) {
+			long solution = remaining % sizes[row];
+			remaining /= sizes[row];
+			if (row == 6) {
+				int digits = lastRows[(int) solution];
+				for (int i = 62; i >= 54; i--) {
+					code[i] = (char) ('0' + digits % 10);
+					digits /= 10;
+				}
+			} else {
+				solve(code, row * 9, unknowns[row], solution);
+			}
+		}
+		byte[] key = new byte[33];
+		int tag = Keycode.decode(code, 0, key, 0);
+		if (tag < 0) throw new IllegalStateException("invalid recovery");
+		key[32] = (byte) tag;
+		return new Keycode(format, key, new String(code));
+	}
+
+	private static int[] unknowns(char[] chars, int start) {
+		int count = 0;
+		int[] positions = new int[9];
+		for (int i = 0; i < 9; i++) {
+			if (chars[start + i] == UNKNOWN) positions[count++] = i;
+		}
+		int[] unknowns = new int[count];
+		System.arraycopy(positions, 0, unknowns, 0, count);
+		return unknowns;
+	}
+
+	// fills the unknowns of a base32 row with the indexed solution
+	private static void solve(char[] code, int start, int[] unknowns, long solution) {
+		int last = unknowns.length - 1;
+		if (last < 0) return;
+		for (int i = 0; i < last; i++) {
+			code[start + unknowns[i]] = CHARS_32[(int) (solution & 31)];
+			solution >>= 5;
+		}
+		// the unknown contributes nothing to the syndrome, which it must cancel
+		int p = unknowns[last];
+		code[start + p] = CHARS_32[TAQG32.substitution(p, TAQG32.syndrome(code, start))];
+	}
+
+	// up to limit valid last rows that match the pattern, as decimal values
+	private static int[] lastRows(char[] chars, int limit) {
+		char[] row = new char[9];
+		System.arraycopy(chars, 54, row, 0, 9);
+		LastRows rows = new LastRows(limit);
+		enumerate(row, 0, rows);
+		return Arrays.copyOf(rows.values, rows.count);
+	}
+
+	// returns false once the limit has been reached
+	private static boolean enumerate(char[] row, int i, LastRows rows) {
+		if (i == 8) {
+			char check = TAQG10.compute(row, 0, 8);
+			if (row[8] != UNKNOWN && row[8] != check) return true;
+			char known = row[8];
+			row[8] = check;
+			// checked as the last row of a code that starts 54 characters earlier
+			if (Keycode.checkLastRow(row, -54) >= 0 && Keycode.decodeLastRow(row, -54, null, 0) >= 0) rows.add(row);
+			row[8] = known;
+			return rows.count < rows.limit;
+		}
+		if (rows.count == rows.limit) return false;
+		char known = row[i];
+		for (char c = '0'; c <= '9'; c++) {
+			if (known != UNKNOWN && c != known) continue;
+			// no leading zeros and no doubled digits within each group
+			if (i % 3 == 0 ? c == '0' : c == row[i - 1]) continue;
+			row[i] = c;
+			if (!enumerate(row, i + 1, rows)) {
+				row[i] = known;
+				return false;
+			}
+		}
+		row[i] = known;
+		return true;
+	}
+
+	private static final class LastRows {
+
+		final int limit;
+		int[] values = new int[16];
+		int count = 0;
+
+		LastRows(int limit) {
+			this.limit = limit;
+		}
+
+		void add(char[] row) {
+			int value = 0;
+			for (int i = 0; i < 9; i++) {
+				value = value * 10 + row[i] - '0';
+			}
+			if (count == values.length) values = Arrays.copyOf(values, count * 2);
+			values[count++] = value;
+		}
+
+	}
+
+}
@@ -32,21 +32,59 @@ final class TAQG10 {
 		2, 5, 8, 1, 4, 3, 6, 7, 9, 0
 	};
 
-	private static int accumulateChecksum(CharSequence cs, int start, int finish) {
+	// the state after accumulating every three digit decimal number from each state
+	private static final byte[] TRIPLES = new byte[10 * 1000];
+	// the state after accumulating every two digit decimal number from each state
+	private static final byte[] PAIRS = new byte[10 * 100];
+
+	static {
+		for (int x = 0; x < 10; x++) {
+			for (int t = 0; t < 1000; t++) {
+				int y = TABLE[x * 10 + t / 100];
+				y = TABLE[y * 10 + t / 10 % 10];
+				y = TABLE[y * 10 + t % 10];
+				TRIPLES[x * 1000 + t] = (byte) y;
+			}
+			for (int p = 0; p < 100; p++) {
+				int y = TABLE[x * 10 + p / 10];
+				y = TABLE[y * 10 + p % 10];
+				PAIRS[x * 100 + p] = (byte) y;
+			}
+		}
+	}
+
+	private static int accumulateChecksum(char[] cs, int start, int finish) {
 		int x = 0;
-		for (int i = start; i < finish; i++) {
-			int c = cs.charAt(i);
-			int v = c - 48;
+		int i = start;
+		for (; i + 3 <= finish; i += 3) {
+			int t = cs[i] * 100 + cs[i + 1] * 10 + cs[i + 2] - 48 * 111;
+			x = TRIPLES[x * 1000 + t];
+		}
+		for (; i < finish; i++) {
+			int v = cs[i] - 48;
 			x = TABLE[x * 10 + v];
 		}
 		return x;
 	}
+
+	// the state after accumulating a digit character, the initial state is zero
+	static int step(int state, char c) {
+		return TABLE[state * 10 + c - 48];
+	}
+
+	// computes the check digit for two decimal triples followed by a decimal pair
+	static char compute(int triple1, int triple2, int pair) {
+		int x = TRIPLES[triple1];
+		x = TRIPLES[x * 1000 + triple2];
+		x = PAIRS[x * 100 + pair];
+		return (char) (x + 48);
+	}
 	
-	static char compute(CharSequence cs, int start, int finish) {
+	static char compute(char[] cs, int start, int finish) {
 		return (char) (accumulateChecksum(cs, start, finish) + 48);
 	}
 	
-	static boolean verify(CharSequence cs, int start, int finish) {
+	static boolean verify(char[] cs, int start, int finish) {
 		return accumulateChecksum(cs, start, finish) == 0;
 	}
 
@@ -71,22 +71,98 @@ final class TAQG32 {
 		}
 	}
 	
-	private static int accumulateChecksum(CharSequence cs, int start, int finish) {
+	// OP[x << 5 | y] == op(x, y)
+	private static final byte[] OP = new byte[32 * 32];
+	// CHECK[x] == opInv(x, 0), the value that completes a checksum
+	private static final byte[] CHECK = new byte[32];
+	// the contribution of each character at each position of a 9 character row to its checksum
+	private static final byte[] ROW = new byte[9 * 128];
+	// FIX[i << 5 | s] is the value which, added at position i of a row, contributes s to its checksum
+	private static final byte[] FIX = new byte[9 * 32];
+	// SWAP[i << 5 | s] is the difference between values which, when swapped at positions i and i + 1, changes the checksum by s
+	private static final byte[] SWAP = new byte[8 * 32];
+
+	static {
+		for (int x = 0; x < 32; x++) {
+			for (int y = 0; y < 32; y++) {
+				OP[x << 5 | y] = (byte) op(x, y);
+			}
+			CHECK[x] = (byte) opInv(x, 0);
+		}
+		// op is linear, so a row's checksum is the sum of its characters' contributions
+		for (int c = 0; c < 128; c++) {
+			int v = VALUES_32[c];
+			if (v < 0) continue;
+			for (int i = 8; i >= 0; i--) {
+				ROW[i << 7 | c] = (byte) v;
+				v = op(v, 0);
+			}
+		}
+		// multiplication by A is invertible, so every position has a unique fix for any syndrome
+		for (int e = 0; e < 32; e++) {
+			int v = e;
+			int previous = 0;
+			for (int i = 8; i >= 0; i--) {
+				FIX[i << 5 | v] = (byte) e;
+				if (i < 8) SWAP[i << 5 | (v ^ previous)] = (byte) e;
+				previous = v;
+				v = op(v, 0);
+			}
+		}
+	}
+
+	private static int accumulateChecksum(char[] cs, int start, int finish) {
 		int x = 0;
 		for (int i = start; i < finish; i++) {
-			int c = cs.charAt(i);
+			int c = cs[i];
 			int v = VALUES_32[c];
-			x = op(x, v);
+			x = OP[x << 5 | v];
 		}
 		return x;
 	}
-	
-	static char compute(CharSequence cs, int start, int finish) {
-		return CHARS_32[opInv(accumulateChecksum(cs, start, finish), 0)];
+
+	// the checksum of the first count characters of a row, scaled as per their row positions
+	private static int rowChecksum(char[] cs, int start, int count) {
+		int x = 0;
+		for (int i = 0; i < count; i++) {
+			x ^= ROW[i << 7 | cs[start + i]];
+		}
+		return x;
+	}
+
+	static char compute(char[] cs, int start, int finish) {
+		if (finish - start == 8) return CHARS_32[rowChecksum(cs, start, 8)];
+		return CHARS_32[CHECK[accumulateChecksum(cs, start, finish)]];
 	}
 	
-	static boolean verify(CharSequence cs, int start, int finish) {
+	static boolean verify(char[] cs, int start, int finish) {
+		if (finish - start == 9) return rowChecksum(cs, start, 9) == 0;
 		return accumulateChecksum(cs, start, finish) == 0;
 	}
 	
+	// the contribution of a valid character at position i to the checksum of its row
+	static int contribution(int i, char c) {
+		return ROW[i << 7 | c];
+	}
+
+	// the checksum of a row, which is zero if the row is valid, treating invalid characters as zero
+	static int syndrome(char[] cs, int start) {
+		int x = 0;
+		for (int i = 0; i < 9; i++) {
+			char c = cs[start + i];
+			if (c < 128) x ^= ROW[i << 7 | c];
+		}
+		return x;
+	}
+
+	// the value to add to the character at position i to correct a row with the given syndrome
+	static int substitution(int i, int syndrome) {
+		return FIX[i << 5 | syndrome];
+	}
+
+	// the difference between the values at positions i and i + 1 which, if swapped, would correct the syndrome
+	static int transposition(int i, int syndrome) {
+		return SWAP[i << 5 | syndrome];
+	}
+
 }
@@ -0,0 +1,376 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.tomgibara.keycode.Keycode;
+import com.tomgibara.keycode.Keycode.Format;
+
+/**
+ * <p>
+ * A command line tool for converting very large files of keys to and from
+ * keycodes. Each line of input is processed independently and, except when
+ * verifying, produces exactly one line of output:
+ * 
+ * <dl>
+ * <dt>encode</dt>
+ * <dd>reads a 64 digit hex key, optionally followed by whitespace and a
+ * decimal tag, and writes a plain keycode</dd>
+ * <dt>decode</dt>
+ * <dd>reads a keycode, which may contain whitespace, and writes its hex key,
+ * followed by a space and the tag if it is non-zero</dd>
+ * <dt>verify</dt>
+ * <dd>reads a keycode and writes nothing</dd>
+ * </dl>
+ * 
+ * <p>
+ * Lines that cannot be processed produce an empty line of output and are
+ * reported to standard error, as are blank lines of input. The input file is
+ * memory mapped in chunks which are split at line boundaries and processed by
+ * a pool of workers; output is written in input order. A summary of
+ * throughput and errors is written to standard error on completion.
+ * 
+ * <pre>
+ * KeycodeTool (encode|decode|verify) [-w workers] [-c chunkMB] input [output]
+ * </pre>
+ * 
+ * <p>
+ * The process exits with a status of 0 if every line was processed, 1 if any
+ * lines were invalid, and 2 if the tool could not be run.
+ * 
+ * @author tomgibara
+ */
+
+public final class KeycodeTool {
+
+	private static final String USAGE = "usage: KeycodeTool (encode|decode|verify) [-w workers] [-c chunkMB] input [output]";
+
+	// the maximum number of invalid lines that are individually reported
+	private static final int MAX_REPORTED = 100;
+
+	private static final int MAX_CHUNK_MB = 1024;
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private enum Mode {
+		ENCODE, DECODE, VERIFY;
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	// runs the tool, returning the exit status
+	static int run(String[] args, OutputStream stdout, PrintStream err) {
+		Mode mode = null;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int chunkMB = 8;
+		String input = null;
+		String output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-w")) {
+					workers = Integer.parseInt(args[++i]);
+					if (workers < 1) throw new IllegalArgumentException("workers must be positive");
+				} else if (arg.equals("-c")) {
+					chunkMB = Integer.parseInt(args[++i]);
+					if (chunkMB < 1 || chunkMB > MAX_CHUNK_MB) throw new IllegalArgumentException("chunk size must be between 1 and " + MAX_CHUNK_MB + " MB");
+				} else if (mode == null) {
+					mode = Mode.valueOf(arg.toUpperCase(Locale.ROOT));
+				} else if (input == null) {
+					input = arg;
+				} else if (output == null) {
+					output = arg;
+				} else {
+					throw new IllegalArgumentException("unexpected argument: " + arg);
+				}
+			}
+			if (mode == null || input == null) throw new IllegalArgumentException("mode and input required");
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			// includes unparsable numbers and unknown modes
+			err.println(USAGE);
+			return 2;
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(input, "r")) {
+			OutputStream out;
+			boolean toFile = output != null && !output.equals("-");
+			if (mode == Mode.VERIFY) {
+				out = null;
+			} else if (toFile) {
+				out = new BufferedOutputStream(new FileOutputStream(new File(output)), 1 << 16);
+			} else {
+				out = new BufferedOutputStream(stdout, 1 << 16);
+			}
+			try {
+				Summary summary = process(file.getChannel(), mode, workers, chunkMB << 20, out, err);
+				if (out != null) out.flush();
+				err.println(summary);
+				return summary.errors == 0 ? 0 : 1;
+			} finally {
+				if (out != null && toFile) out.close();
+			}
+		} catch (IOException e) {
+			err.println("keycode tool failed: " + e.getMessage());
+			return 2;
+		}
+	}
+
+	private static Summary process(FileChannel channel, Mode mode, int workers, int chunkSize, OutputStream out, PrintStream err) throws IOException {
+		long startTime = System.nanoTime();
+		long size = channel.size();
+		Summary summary = new Summary(mode, size);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			// bounded so that the memory used for pending output is limited
+			Deque<Future<Chunk>> pending = new ArrayDeque<>();
+			long position = 0L;
+			while (position < size || !pending.isEmpty()) {
+				while (position < size && pending.size() < workers * 2) {
+					long end = lineEnd(channel, Math.min(size, position + chunkSize) - 1, size);
+					pending.add(executor.submit(new Chunk(channel, position, (int) (end - position), mode)));
+					position = end;
+				}
+				Chunk chunk = await(pending.remove());
+				if (out != null) out.write(chunk.out, 0, chunk.length);
+				for (int i = 0; i < chunk.failures.size(); i++) {
+					if (summary.errors + i < MAX_REPORTED) {
+						err.println("line " + (summary.lines + chunk.failureLines.get(i) + 1) + ": " + chunk.failures.get(i));
+					}
+				}
+				summary.lines += chunk.lines;
+				summary.errors += chunk.failures.size();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		summary.nanos = System.nanoTime() - startTime;
+		return summary;
+	}
+
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	// the position following the first newline at or after position
+	private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			((Buffer) buffer).clear();
+			int count = channel.read(buffer, position);
+			if (count <= 0) break;
+			for (int i = 0; i < count; i++) {
+				if (buffer.get(i) == '\n') return position + i + 1;
+			}
+			position += count;
+		}
+		return size;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	private static int hexValue(int b) {
+		if (b >= '0' && b <= '9') return b - '0';
+		if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+		if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+		return -1;
+	}
+
+	private static final class Summary {
+
+		final Mode mode;
+		final long bytes;
+		long lines = 0L;
+		long errors = 0L;
+		long nanos = 0L;
+
+		Summary(Mode mode, long bytes) {
+			this.mode = mode;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(nanos, 1L) / 1e9;
+			return String.format(Locale.ROOT, "%s: %d lines, %d errors, %.1f MB in %.3f s (%.1f MB/s, %.0f lines/s)",
+					mode.name().toLowerCase(Locale.ROOT), lines, errors, bytes / 1e6, seconds, bytes / 1e6 / seconds, lines / seconds);
+		}
+	}
+
+	// processes a range of whole lines, accumulating output in memory
+	private static final class Chunk implements Callable<Chunk> {
+
+		private final FileChannel channel;
+		private final long start;
+		private final int size;
+		private final Mode mode;
+
+		private final byte[] key = new byte[32];
+		private final char[] chars = new char[Format.plain().getCodeLength()];
+
+		byte[] out;
+		int length = 0;
+		int lines = 0;
+		final List<Integer> failureLines = new ArrayList<>();
+		final List<String> failures = new ArrayList<>();
+
+		Chunk(FileChannel channel, long start, int size, Mode mode) {
+			this.channel = channel;
+			this.start = start;
+			this.size = size;
+			this.mode = mode;
+			// roughly the size of the output for most modes
+			out = new byte[mode == Mode.VERIFY ? 0 : size];
+		}
+
+		@Override
+		public Chunk call() throws IOException {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			int position = 0;
+			while (position < size) {
+				int end = position;
+				while (end < size && buffer.get(end) != '\n') end++;
+				int next = end + 1;
+				String failure = line(buffer, position, end);
+				if (failure != null) {
+					failureLines.add(lines);
+					failures.add(failure);
+				}
+				if (mode != Mode.VERIFY) write((byte) '\n');
+				lines++;
+				position = next;
+			}
+			return this;
+		}
+
+		// processes a single line, returning a failure message, or null
+		private String line(ByteBuffer buffer, int start, int end) {
+			while (start < end && isWhitespace(buffer.get(start))) start++;
+			while (end > start && isWhitespace(buffer.get(end - 1))) end--;
+			if (start == end) return "blank line";
+			switch (mode) {
+			case ENCODE: return encode(buffer, start, end);
+			default: return decode(buffer, start, end);
+			}
+		}
+
+		private String encode(ByteBuffer buffer, int start, int end) {
+			if (end - start < 64) return "short hex key";
+			for (int i = 0; i < 32; i++) {
+				int hi = hexValue(buffer.get(start + 2 * i));
+				int lo = hexValue(buffer.get(start + 2 * i + 1));
+				if (hi < 0 || lo < 0) return "invalid hex key";
+				key[i] = (byte) (hi << 4 | lo);
+			}
+			int tag = 0;
+			int i = start + 64;
+			if (i < end) {
+				if (!isWhitespace(buffer.get(i))) return "long hex key";
+				while (isWhitespace(buffer.get(i))) i++;
+				for (; i < end; i++) {
+					int b = buffer.get(i);
+					if (b < '0' || b > '9' || tag > 12) return "invalid tag";
+					tag = tag * 10 + b - '0';
+				}
+				if (tag > 127) return "invalid tag";
+			}
+			int length = Format.plain().encodeTo(key, 0, (byte) tag, chars, 0);
+			ensure(length);
+			for (int j = 0; j < length; j++) {
+				out[this.length++] = (byte) chars[j];
+			}
+			return null;
+		}
+
+		private String decode(ByteBuffer buffer, int start, int end) {
+			// Buffer methods are called through Buffer so that they run on Java 7 and 8
+			((Buffer) buffer).limit(end);
+			((Buffer) buffer).position(start);
+			Keycode keycode;
+			try {
+				keycode = Format.plain().parse(buffer);
+			} catch (IllegalArgumentException e) {
+				return e.getMessage();
+			} finally {
+				((Buffer) buffer).clear();
+			}
+			if (mode == Mode.VERIFY) return null;
+			byte[] key = keycode.getKey();
+			int tag = keycode.getTag();
+			ensure(68);
+			for (int i = 0; i < 32; i++) {
+				out[length++] = HEX[(key[i] >> 4) & 0xf];
+				out[length++] = HEX[ key[i]       & 0xf];
+			}
+			if (tag != 0) {
+				out[length++] = ' ';
+				if (tag >= 100) out[length++] = (byte) ('0' + tag / 100);
+				if (tag >= 10) out[length++] = (byte) ('0' + tag / 10 % 10);
+				out[length++] = (byte) ('0' + tag % 10);
+			}
+			return null;
+		}
+
+		private void write(byte b) {
+			ensure(1);
+			out[length++] = b;
+		}
+
+		private void ensure(int count) {
+			if (length + count > out.length) {
+				out = Arrays.copyOf(out, Math.max(out.length * 2, length + count));
+			}
+		}
+
+	}
+
+}
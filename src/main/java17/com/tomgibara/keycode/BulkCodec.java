@@ -0,0 +1,48 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+/*
+ * Decodes many contiguous keycodes at once on behalf of KeycodeBatch.
+ * 
+ * This Java 17 version of the class is packaged into multi-release jars. It
+ * uses VectorCodec when the jdk.incubator.vector module has been added to the
+ * runtime (eg. with --add-modules jdk.incubator.vector) and falls back to the
+ * scalar implementation otherwise. The vector path can also be disabled by
+ * setting the system property com.tomgibara.keycode.vector to false.
+ */
+
+final class BulkCodec {
+
+	static final boolean VECTORIZED = isVectorAvailable();
+
+	private static boolean isVectorAvailable() {
+		try {
+			if (!Boolean.parseBoolean(System.getProperty("com.tomgibara.keycode.vector", "true"))) return false;
+		} catch (SecurityException e) {
+			/* use the default */
+		}
+		return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	}
+
+	static int decode(char[] chars, int offset, int count, byte[] keys, boolean[] valid) {
+		return VECTORIZED && VectorCodec.isWorthwhile(count) ?
+				VectorCodec.decode(chars, offset, count, keys, valid) :
+				KeycodeBatch.decode(chars, offset, count, keys, valid);
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import com.tomgibara.keycode.Keycode.Failure;
+
+/*
+ * Reports notable parses to the flight recorder on behalf of Instrumentation.
+ * 
+ * This Java 17 version of the class is packaged into multi-release jars. It
+ * commits a com.tomgibara.keycode.ParseFailure event for every failed parse
+ * and a com.tomgibara.keycode.SlowParse event for every successful parse that
+ * exceeds the configured threshold. Both events are enabled by default and
+ * are only recorded while a recording is in progress.
+ */
+
+final class ParseEvents {
+
+	@Name("com.tomgibara.keycode.ParseFailure")
+	@Label("Keycode Parse Failure")
+	@Category("Keycode")
+	@Description("A code that failed to parse as a keycode")
+	static final class FailureEvent extends Event {
+
+		@Label("Failure")
+		String failure;
+
+		@Label("Row")
+		int row;
+
+		@Label("Position")
+		int position;
+
+		@Label("Parse Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long parseTime;
+
+	}
+
+	@Name("com.tomgibara.keycode.SlowParse")
+	@Label("Slow Keycode Parse")
+	@Category("Keycode")
+	@Description("A keycode that took longer than the threshold to parse")
+	static final class SlowEvent extends Event {
+
+		@Label("Parse Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long parseTime;
+
+	}
+
+	static void failed(int result, long nanos) {
+		FailureEvent event = new FailureEvent();
+		if (!event.isEnabled()) return;
+		event.failure = Failure.of(result).name();
+		event.row = Failure.row(result);
+		event.position = Failure.position(result);
+		event.parseTime = nanos;
+		event.commit();
+	}
+
+	static void slow(long nanos) {
+		SlowEvent event = new SlowEvent();
+		if (!event.isEnabled()) return;
+		event.parseTime = nanos;
+		event.commit();
+	}
+
+	private ParseEvents() { }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.NE;
+import static jdk.incubator.vector.VectorOperators.OR;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Checks the base32 rows of contiguous keycodes using the vector API. Every
+ * row of a keycode is 9 characters long, so the rows of consecutive keycodes
+ * lie at a fixed stride; each lane of a vector holds one row and the nine
+ * characters of the rows are gathered one column at a time. The characters are
+ * first widened to ints because short gathers are not intrinsified on all
+ * platforms, and boxed vectors would cost more than they save.
+ * 
+ * For each column, the characters are validated against the ranges of the
+ * alphabet and mapped to their values. Since TAQG32's operation is linear over
+ * GF(2), the checksum contribution of each value is the sum of precomputed
+ * contributions for each of its set bits, and these are accumulated with
+ * masked xors.
+ * 
+ * The digit rows are carried through the lanes but their results are ignored;
+ * they are checked by the same scalar code used by Keycode, as is the decoding
+ * of the verified rows, so that results always match the scalar path exactly.
+ */
+
+final class VectorCodec {
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final int LANES = INTS.length();
+
+	private static final int ROWS = 7;
+	private static final int ROW_LENGTH = 9;
+	// flags a character outside the alphabet
+	private static final int INVALID = 32;
+
+	// the character offsets of consecutive rows
+	private static final int[] ROW_OFFSETS = new int[LANES];
+	// the checksum contribution of each bit of a value at each position in a row
+	private static final int[][] BASIS = new int[ROW_LENGTH][5];
+
+	static {
+		for (int i = 0; i < LANES; i++) {
+			ROW_OFFSETS[i] = i * ROW_LENGTH;
+		}
+		for (int b = 0; b < 5; b++) {
+			int x = 1 << b;
+			for (int p = ROW_LENGTH - 1; p >= 0; p--) {
+				BASIS[p][b] = x;
+				x = TAQG32.op(x, 0);
+			}
+		}
+	}
+
+	static boolean isWorthwhile(int count) {
+		return count * ROWS >= LANES;
+	}
+
+	private static VectorMask<Integer> between(IntVector c, int lo, int hi) {
+		return c.compare(GE, lo).and(c.compare(LE, hi));
+	}
+
+	static int decode(char[] chars, int offset, int count, byte[] keys, boolean[] valid) {
+		int rows = count * ROWS;
+		// padded so that every vector is whole
+		int padded = (rows + LANES - 1) / LANES * LANES;
+		// widened since int gathers are well supported
+		int[] ints = new int[padded * ROW_LENGTH];
+		int length = count * KeycodeBatch.CODE_LENGTH;
+		for (int i = 0; i < length; i++) {
+			ints[i] = chars[offset + i];
+		}
+		// zero for rows with valid characters and checksums
+		int[] errors = new int[padded];
+		IntVector zero = IntVector.zero(INTS);
+
+		for (int row = 0; row < padded; row += LANES) {
+			int base = row * ROW_LENGTH;
+			IntVector acc = zero;
+			IntVector flags = zero;
+			for (int p = 0; p < ROW_LENGTH; p++) {
+				IntVector c = IntVector.fromArray(INTS, ints, base + p, ROW_OFFSETS, 0);
+				VectorMask<Integer> alphabet =
+						between(c, '0', '9')
+						.or(between(c, 'A', 'H'))
+						.or(between(c, 'J', 'N'))
+						.or(between(c, 'P', 'R'))
+						.or(between(c, 'T', 'Y'));
+				flags = flags.lanewise(OR, INVALID, alphabet.not());
+				IntVector v = c
+						.sub('0')
+						.sub(7, c.compare(GE, 'A'))
+						.sub(1, c.compare(GE, 'J'))
+						.sub(1, c.compare(GE, 'P'))
+						.sub(1, c.compare(GE, 'T'));
+				int[] basis = BASIS[p];
+				for (int b = 0; b < 5; b++) {
+					acc = acc.lanewise(XOR, basis[b], v.and(1 << b).compare(NE, 0));
+				}
+			}
+			// checksums are five bits, so invalid characters are flagged above them
+			acc.or(flags).intoArray(errors, row);
+		}
+
+		// the last rows are checked and the keys assembled
+		int success = 0;
+		for (int i = 0; i < count; i++) {
+			int start = i * KeycodeBatch.ENTRY_LENGTH;
+			int from = offset + i * KeycodeBatch.CODE_LENGTH;
+			int first = i * ROWS;
+			boolean rowsOk = true;
+			for (int r = 0; r < ROWS - 1; r++) {
+				rowsOk &= errors[first + r] == 0;
+			}
+			int result = rowsOk ? Keycode.checkLastRow(chars, from) : -1;
+			if (result >= 0) result = Keycode.decodeLastRow(chars, from, keys, start);
+			if (result >= 0) {
+				for (int r = 0; r < ROWS - 1; r++) {
+					Encoder.parseBytesBase32(chars, from + r * ROW_LENGTH, keys, start + r * 5);
+				}
+				keys[start + 32] = (byte) result;
+				valid[i] = true;
+				success++;
+			} else {
+				Arrays.fill(keys, start, start + KeycodeBatch.ENTRY_LENGTH, (byte) 0);
+				valid[i] = false;
+			}
+		}
+		return success;
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.tomgibara.keycode.Correction.Type;
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class CorrectionTest extends TestCase {
+
+	private static final String ALPHABET = new String(Encoder.CHARS_32);
+
+	// every single substitution or adjacent swap that yields a valid code
+	private static Set<String> bruteForce(String code) {
+		Set<String> set = new HashSet<String>();
+		char[] chars = code.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			char original = chars[i];
+			for (int j = 0; j < ALPHABET.length(); j++) {
+				char c = ALPHABET.charAt(j);
+				if (c == original) continue;
+				chars[i] = c;
+				if (Format.plain().validate(new String(chars)) >= 0) set.add(new String(chars));
+			}
+			chars[i] = original;
+		}
+		for (int i = 0; i < chars.length - 1; i++) {
+			char a = chars[i];
+			char b = chars[i + 1];
+			if (a == b) continue;
+			chars[i] = b;
+			chars[i + 1] = a;
+			if (Format.plain().validate(new String(chars)) >= 0) set.add(new String(chars));
+			chars[i] = a;
+			chars[i + 1] = b;
+		}
+		return set;
+	}
+
+	private static Set<String> suggested(String code) {
+		Set<String> set = new HashSet<String>();
+		for (Correction correction : Format.plain().suggestCorrections(code)) {
+			String corrected = correction.getCorrectedCode();
+			assertEquals(Format.plain().parse(corrected), correction.getKeycode());
+			assertTrue(set.add(corrected));
+		}
+		return set;
+	}
+
+	public void testMatchesBruteForce() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		for (int test = 0; test < 200; test++) {
+			r.nextBytes(key);
+			String code = Format.plain().keycode(key, (byte) r.nextInt(128)).toString();
+			char[] chars = code.toCharArray();
+			int i = test % 4 == 0 ? 54 + r.nextInt(9) : r.nextInt(63);
+			if (test % 3 == 0 && i < 62) {
+				char c = chars[i];
+				chars[i] = chars[i + 1];
+				chars[i + 1] = c;
+			} else {
+				chars[i] = test % 5 == 0 ? 'O' : ALPHABET.charAt(r.nextInt(32));
+			}
+			String corrupted = new String(chars);
+			if (corrupted.equals(code)) continue;
+			Set<String> expected = bruteForce(corrupted);
+			assertTrue(expected.contains(code) || Format.plain().validate(corrupted) >= 0);
+			assertEquals(corrupted, expected, suggested(corrupted));
+		}
+	}
+
+	public void testRankingAndPositions() {
+		Keycode keycode = Format.standard().keycode(new byte[32]);
+		String code = keycode.toString();
+		// a letter O typed in place of a zero
+		int i = code.indexOf('0', 12);
+		String corrupted = code.substring(0, i) + 'O' + code.substring(i + 1);
+		List<Correction> corrections = Format.standard().suggestCorrections(corrupted);
+		assertEquals(1, corrections.size());
+		Correction correction = corrections.get(0);
+		assertEquals(Type.SUBSTITUTION, correction.getType());
+		assertEquals(i, correction.getPosition());
+		assertEquals(code, correction.getCorrectedCode());
+		assertEquals(keycode, correction.getKeycode());
+
+		// transpositions across whitespace rank ahead of substitutions
+		String plain = Format.plain().keycode(new byte[] {
+				1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+				17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32,
+		}).toString();
+		String spaced = Format.standard().parse(plain).toString();
+		int j = spaced.indexOf(' ');
+		String swapped = spaced.substring(0, j - 1) + spaced.charAt(j + 1) + ' ' + spaced.charAt(j - 1) + spaced.substring(j + 2);
+		corrections = Format.standard().suggestCorrections(swapped);
+		correction = corrections.get(0);
+		assertEquals(Type.TRANSPOSITION, correction.getType());
+		assertEquals(j - 1, correction.getPosition());
+		assertEquals(j + 1, correction.getOtherPosition());
+		assertEquals(spaced, correction.getCorrectedCode());
+
+		// valid and uncorrectable codes have no suggestions
+		assertTrue(Format.standard().suggestCorrections(code).isEmpty());
+		assertTrue(Format.standard().suggestCorrections(code.substring(1)).isEmpty());
+		assertTrue(Format.standard().suggestCorrections("OO" + code.substring(2)).isEmpty());
+	}
+
+}
@@ -29,14 +29,14 @@ public class EncoderTest extends TestCase {
 		Random r = new Random(0L);
 		byte[] bs = new byte[5];
 		for (int test = 0; test < 100; test++) {
-			StringBuilder sb = new StringBuilder(8);
+			char[] cs = new char[8];
 			r.nextBytes(bs);
-			Encoder.appendBytesBase32(sb, bs, 0);
+			Encoder.writeBytesBase32(cs, 0, bs, 0);
 			byte[] check = new byte[5];
-			Encoder.parseBytesBase32(sb, 0, check, 0);
+			Encoder.parseBytesBase32(cs, 0, check, 0);
 			if (!Arrays.equals(bs, check)) {
 				System.err.println(Arrays.toString(bs));
-				System.err.println(sb);
+				System.err.println(cs);
 				System.err.println(Arrays.toString(check));
 				throw new IllegalStateException();
 			}
@@ -45,12 +45,11 @@ public class EncoderTest extends TestCase {
 
 	public void testAppend6Bits() throws Exception {
 		Set<String> codes = new HashSet<>();
+		char[] cs = new char[2];
 		for (int val = 0; val < (1 << 6); val++) {
-			StringBuilder sb = new StringBuilder();
-			Encoder.append6Bits(sb, val);
-			String code = sb.toString();
-			if (code.length() != 2) throw new IllegalStateException();
-			int res = Encoder.parse6Bits(code, 0);
+			Encoder.write6Bits(cs, 0, val);
+			String code = new String(cs);
+			int res = Encoder.parse6Bits(cs, 0);
 			if (res != val) throw new IllegalStateException("mismatch " + val + " -> " + res);
 			if (!codes.add(code)) throw new IllegalStateException();
 			if (code.charAt(0) == '0' || code.charAt(0) == code.charAt(1)) throw new IllegalStateException();
@@ -59,16 +58,130 @@ public class EncoderTest extends TestCase {
 	
 	public void testAppend9Bits() throws Exception {
 		Set<String> codes = new HashSet<>();
+		char[] cs = new char[3];
 		for (int val = 0; val < (1 << 9); val++) {
-			StringBuilder sb = new StringBuilder();
-			Encoder.append9Bits(sb, val);
-			String code = sb.toString();
-			if (code.length() != 3) throw new IllegalStateException();
-			int res = Encoder.parse9Bits(code, 0);
+			Encoder.write9Bits(cs, 0, val);
+			String code = new String(cs);
+			int res = Encoder.parse9Bits(cs, 0);
 			if (res != val) throw new IllegalStateException("mismatch " + val + " -> " + res);
 			if (!codes.add(code)) throw new IllegalStateException();
 			if (code.charAt(0) == '0' || code.charAt(0) == code.charAt(1) || code.charAt(0) == code.charAt(2) || code.charAt(1) == code.charAt(2)) throw new IllegalStateException();
 		}
 	}
-	
+
+	public void testRowCodecMatchesScalar() throws Exception {
+		Random r = new Random(0L);
+		byte[] bs = new byte[5];
+		char[] cs = new char[8];
+		for (int test = 0; test < 100000; test++) {
+			r.nextBytes(bs);
+			String expected = referenceBytesBase32(bs);
+			Encoder.writeBytesBase32(cs, 0, bs, 0);
+			assertEquals(expected, new String(cs));
+			byte[] check = new byte[5];
+			Encoder.parseBytesBase32(cs, 0, check, 0);
+			assertTrue(Arrays.equals(bs, check));
+		}
+		// every value in every lane
+		for (int lane = 0; lane < 8; lane++) {
+			for (int v = 0; v < 32; v++) {
+				long bits = (long) v << (35 - 5 * lane);
+				for (int i = 0; i < 5; i++) bs[i] = (byte) (bits >> (32 - 8 * i));
+				Encoder.writeBytesBase32(cs, 0, bs, 0);
+				assertEquals(referenceBytesBase32(bs), new String(cs));
+			}
+		}
+	}
+
+	public void testRowValidation() throws Exception {
+		char[] cs = "00000000".toCharArray();
+		assertTrue(Encoder.isBase32(Encoder.loadChars(cs, 0)));
+		for (int lane = 0; lane < 8; lane++) {
+			for (char c = 0; c < 256; c++) {
+				cs[lane] = c;
+				boolean expected = c < 128 && Encoder.VALUES_32[c] >= 0;
+				assertEquals("char " + (int) c + " lane " + lane, expected, Encoder.isBase32(Encoder.loadChars(cs, 0)));
+			}
+			cs[lane] = '0';
+		}
+	}
+
+	public void testDigitTablesMatchArithmetic() throws Exception {
+		char[] cs = new char[3];
+		for (int val = 0; val < (1 << 9); val++) {
+			Encoder.write9Bits(cs, 0, val);
+			assertEquals(reference9Bits(val), new String(cs, 0, 3));
+		}
+		for (int val = 0; val < (1 << 6); val++) {
+			Encoder.write6Bits(cs, 0, val);
+			assertEquals(reference6Bits(val), new String(cs, 0, 2));
+		}
+		for (int i = 0; i < 1000; i++) {
+			String digits = String.format("%03d", i);
+			assertEquals(digits, referenceParse9Bits(digits), Encoder.parse9Bits(digits.toCharArray(), 0));
+		}
+		for (int i = 0; i < 100; i++) {
+			String digits = String.format("%02d", i);
+			assertEquals(digits, referenceParse6Bits(digits), Encoder.parse6Bits(digits.toCharArray(), 0));
+		}
+	}
+
+	// the original arithmetic implementations
+
+	private static String referenceBytesBase32(byte[] bs) {
+		int a = ((bs[0] & 0xf8) >> 3);
+		int b = ((bs[0] & 0x07) << 2) | ((bs[1] & 0xc0) >> 6);
+		int c = ((bs[1] & 0x3e) >> 1);
+		int d = ((bs[1] & 0x01) << 4) | ((bs[2] & 0xf0) >> 4);
+		int e = ((bs[2] & 0x0f) << 1) | ((bs[3] & 0x80) >> 7);
+		int f = ((bs[3] & 0x7c) >> 2);
+		int g = ((bs[3] & 0x03) << 3) | ((bs[4] & 0xe0) >> 5);
+		int h =  (bs[4] & 0x1f);
+		char[] cs = Encoder.CHARS_32;
+		return new String(new char[] { cs[a], cs[b], cs[c], cs[d], cs[e], cs[f], cs[g], cs[h] });
+	}
+
+	private static String reference9Bits(int val) {
+		int a = val / (9 * 8);
+		a++;
+		val %= 9 * 8;
+		int b = val / 8;
+		if (b >= a) b++;
+		val %= 8;
+		int c = val;
+		if (c >= Math.min(a,b))  c++;
+		if (c >= Math.max(a,b)) c++;
+		return "" + (char) (48 + a) + (char) (48 + b) + (char) (48 + c);
+	}
+
+	private static int referenceParse9Bits(CharSequence src) {
+		int a = src.charAt(0) - 48;
+		int b = src.charAt(1) - 48;
+		int c = src.charAt(2) - 48;
+		int dc = 0;
+		if (c > a) dc++;
+		if (c > b) dc++;
+		c -= dc;
+		if (b > a) b--;
+		a--;
+		return (a * 9 + b) * 8 + c;
+	}
+
+	private static String reference6Bits(int val) {
+		int a = val / 9;
+		a++;
+		val %= 9;
+		int b = val;
+		if (b >= a) b++;
+		return "" + (char) (48 + a) + (char) (48 + b);
+	}
+
+	private static int referenceParse6Bits(CharSequence src) {
+		int a = src.charAt(0) - 48;
+		int b = src.charAt(1) - 48;
+		if (b > a) b--;
+		a--;
+		return a * 9 + b;
+	}
+
 }
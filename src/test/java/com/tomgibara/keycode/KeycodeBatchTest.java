@@ -0,0 +1,133 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeBatchTest extends TestCase {
+
+	public void testRoundTrip() {
+		Random r = new Random(0L);
+		int size = 1000;
+		KeycodeBatch batch = Format.plain().batch(size);
+		byte[][] keys = new byte[size][32];
+		byte[] tags = new byte[size];
+		for (int i = 0; i < size; i++) {
+			r.nextBytes(keys[i]);
+			tags[i] = (byte) r.nextInt(128);
+			batch.setKey(i, keys[i], tags[i]);
+		}
+		char[] chars = batch.encode();
+		assertEquals(size * KeycodeBatch.CODE_LENGTH, chars.length);
+		String str = new String(chars);
+		for (int i = 0; i < size; i++) {
+			String expected = Format.plain().keycode(keys[i], tags[i]).toString();
+			assertEquals(expected, str.substring(i * 63, i * 63 + 63));
+		}
+
+		KeycodeBatch other = Format.standard().batch(size);
+		assertEquals(size, other.decode(str));
+		for (int i = 0; i < size; i++) {
+			assertTrue(other.isValid(i));
+			assertTrue(Arrays.equals(keys[i], other.getKey(i)));
+			assertEquals(tags[i], other.getTag(i));
+			assertEquals(Format.standard().keycode(keys[i], tags[i]), other.keycode(i));
+		}
+	}
+
+	public void testOffsets() {
+		Random r = new Random(1L);
+		KeycodeBatch batch = Format.plain().batch(3);
+		byte[] packed = new byte[100];
+		r.nextBytes(packed);
+		for (int i = 0; i < 3; i++) {
+			batch.setKey(i, packed, 4 + i * 32, (byte) i);
+		}
+		char[] chars = new char[5 + 3 * 63];
+		batch.encode(chars, 5);
+		KeycodeBatch other = Format.plain().batch(3);
+		assertEquals(3, other.decode(chars, 5));
+		byte[] key = new byte[40];
+		for (int i = 0; i < 3; i++) {
+			other.getKey(i, key, 8);
+			assertTrue(Arrays.equals(Arrays.copyOfRange(packed, 4 + i * 32, 36 + i * 32), Arrays.copyOfRange(key, 8, 40)));
+			assertEquals(i, other.getTag(i));
+		}
+	}
+
+	public void testFailureFlags() {
+		Random r = new Random(2L);
+		int size = 10;
+		KeycodeBatch batch = Format.plain().batch(size);
+		byte[] key = new byte[32];
+		for (int i = 0; i < size; i++) {
+			r.nextBytes(key);
+			batch.setKey(i, key);
+		}
+		char[] chars = batch.encode();
+		chars[2 * 63 + 4] = chars[2 * 63 + 4] == 'A' ? 'B' : 'A'; // checksum error
+		chars[5 * 63 + 10] = 'O'; // invalid character
+		chars[7 * 63 + 62] = 'X'; // non-digit in last row
+		chars[9 * 63 + 54] = '0'; // leading zero
+		assertEquals(size - 4, batch.decode(chars, 0));
+		for (int i = 0; i < size; i++) {
+			boolean bad = i == 2 || i == 5 || i == 7 || i == 9;
+			assertEquals(!bad, batch.isValid(i));
+			if (bad) {
+				assertTrue(Arrays.equals(new byte[32], batch.getKey(i)));
+				try {
+					batch.keycode(i);
+					fail();
+				} catch (IllegalStateException e) {
+					/* expected */
+				}
+			}
+		}
+		assertEquals(size - 4, batch.validCount());
+	}
+
+	public void testBulkMatchesScalar() {
+		Random r = new Random(3L);
+		String alphabet = "0123456789ABCDEFGHJKMNPQRTUVWXYZ IO-";
+		for (int size = 1; size < 40; size += 3) {
+			KeycodeBatch batch = Format.plain().batch(size);
+			byte[] key = new byte[32];
+			for (int i = 0; i < size; i++) {
+				r.nextBytes(key);
+				batch.setKey(i, key, (byte) r.nextInt(128));
+			}
+			char[] chars = batch.encode();
+			for (int i = r.nextInt(size + 1); i > 0; i--) {
+				chars[r.nextInt(chars.length)] = alphabet.charAt(r.nextInt(alphabet.length()));
+			}
+			KeycodeBatch bulk = Format.plain().batch(size);
+			KeycodeBatch scalar = Format.plain().batch(size);
+			assertEquals(scalar.decode(new String(chars)), bulk.decode(chars, 0));
+			for (int i = 0; i < size; i++) {
+				assertEquals(scalar.isValid(i), bulk.isValid(i));
+				assertTrue(Arrays.equals(scalar.getKey(i), bulk.getKey(i)));
+				assertEquals(scalar.getTag(i), bulk.getTag(i));
+			}
+		}
+	}
+
+}
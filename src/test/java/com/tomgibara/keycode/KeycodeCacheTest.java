@@ -0,0 +1,150 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeCacheTest extends TestCase {
+
+	private static String code(Random r) {
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		return Format.plain().keycode(key).toString();
+	}
+
+	public void testCounts() {
+		Random r = new Random(0L);
+		KeycodeCache cache = Format.standard().cached(100);
+		assertEquals(100, cache.getMaxEntries());
+		String code = code(r);
+		Keycode keycode = cache.parse(code);
+		assertEquals(Format.standard().parse(code), keycode);
+		assertEquals(Format.standard(), keycode.getFormat());
+		assertSame(keycode, cache.parse(code));
+		// whitespace does not affect lookup
+		assertSame(keycode, cache.parse(keycode.toString()));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+
+		// failures are not cached
+		String invalid = code.substring(0, 62) + (code.charAt(62) == '1' ? '2' : '1');
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.parse(invalid);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+		assertEquals(3, cache.getMissCount());
+		assertEquals(1, cache.size());
+
+		// failures are reported exactly as they are by the format
+		Keycode other = Format.standard().parse(code(r));
+		String text = other.toString();
+		int position = text.indexOf('\n') + 3;
+		String[] failing = {
+				text.substring(0, position) + 'O' + text.substring(position + 1),
+				text.substring(0, position) + (text.charAt(position) == 'A' ? 'B' : 'A') + text.substring(position + 1),
+		};
+		for (String bad : failing) {
+			String expected = null;
+			try {
+				Format.standard().parse(bad);
+				fail();
+			} catch (IllegalArgumentException e) {
+				expected = e.getMessage();
+			}
+			try {
+				cache.parse(bad);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals(expected, e.getMessage());
+			}
+		}
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	public void testEviction() {
+		Random r = new Random(1L);
+		KeycodeCache cache = Format.plain().cached(1);
+		String a = code(r);
+		String b = code(r);
+		Keycode ka = cache.parse(a);
+		cache.parse(b);
+		assertEquals(1, cache.getEvictionCount());
+		assertNotSame(ka, cache.parse(a));
+		assertEquals(2, cache.getEvictionCount());
+
+		cache = Format.plain().cached(50);
+		for (int i = 0; i < 200; i++) {
+			cache.parse(code(r));
+		}
+		assertEquals(50, cache.size());
+		assertEquals(150, cache.getEvictionCount());
+	}
+
+	public void testConcurrent() throws InterruptedException {
+		Random r = new Random(2L);
+		final String[] codes = new String[500];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = code(r);
+		}
+		final KeycodeCache cache = Format.plain().cached(200);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					Random r = new Random(seed);
+					try {
+						for (int i = 0; i < 20000; i++) {
+							String code = codes[r.nextInt(codes.length)];
+							assertEquals(code, cache.parse(code).toString());
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+		assertEquals(80000, cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.size() <= 200);
+		// concurrent misses for the same code insert only one keycode
+		assertTrue(cache.getEvictionCount() <= cache.getMissCount() - cache.size());
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeInputStreamTest extends TestCase {
+
+	private static List<Keycode> keycodes(Random r, Format format, int count) {
+		List<Keycode> keycodes = new ArrayList<>();
+		byte[] key = new byte[format.getKeySize() / 8];
+		for (int i = 0; i < count; i++) {
+			r.nextBytes(key);
+			keycodes.add(format.keycode(key, (byte) r.nextInt(128)));
+		}
+		return keycodes;
+	}
+
+	private static byte[] write(List<Keycode> keycodes) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		KeycodeOutputStream out = new KeycodeOutputStream(bytes);
+		out.writeAll(keycodes);
+		assertEquals(keycodes.size(), out.getCount());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public void testRoundTrip() throws IOException {
+		Random r = new Random(0L);
+		// enough keycodes to span many buffers
+		List<Keycode> keycodes = keycodes(r, Format.standard(), 1000);
+		byte[] bytes = write(keycodes);
+		// the header, one format and the tag and key of each keycode
+		assertEquals(4 + 3 + 1000 * 33, bytes.length);
+
+		KeycodeInputStream in = new KeycodeInputStream(new ByteArrayInputStream(bytes));
+		for (Keycode keycode : keycodes) {
+			Keycode read = in.read();
+			assertEquals(keycode, read);
+			assertSame(Format.standard(), read.getFormat());
+		}
+		assertNull(in.read());
+		assertEquals(keycodes.size(), in.getCount());
+		in.close();
+	}
+
+	public void testMixedFormats() throws IOException {
+		Random r = new Random(0L);
+		Format[] formats = {
+				Format.plain(),
+				Format.standard(),
+				Format.custom("\t", "\r\n"),
+				Format.plain().withKeySize(128),
+				Format.custom("  ", "\n").withKeySize(512),
+		};
+		List<Keycode> keycodes = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			keycodes.addAll(keycodes(r, formats[r.nextInt(formats.length)], r.nextInt(5)));
+		}
+		List<Keycode> read = new KeycodeInputStream(new ByteArrayInputStream(write(keycodes))).readAll();
+		assertEquals(keycodes, read);
+		for (int i = 0; i < keycodes.size(); i++) {
+			assertEquals(keycodes.get(i).getFormat(), read.get(i).getFormat());
+			assertEquals(keycodes.get(i).toString(), read.get(i).toString());
+		}
+
+		// an empty stream contains only its header
+		byte[] empty = write(new ArrayList<Keycode>());
+		assertEquals(4, empty.length);
+		assertTrue(new KeycodeInputStream(new ByteArrayInputStream(empty)).readAll().isEmpty());
+	}
+
+	public void testInvalid() throws IOException {
+		Random r = new Random(0L);
+		byte[] bytes = write(keycodes(r, Format.plain(), 3));
+
+		checkInvalid(new byte[0], EOFException.class);
+		checkInvalid(Arrays.copyOf(bytes, 2), EOFException.class);
+		checkInvalid(Arrays.copyOf(bytes, bytes.length - 1), EOFException.class);
+		byte[] copy = bytes.clone();
+		copy[0] = 'X';
+		checkInvalid(copy, StreamCorruptedException.class);
+		copy = bytes.clone();
+		copy[3] = 2;
+		checkInvalid(copy, StreamCorruptedException.class);
+		// a keycode without a format
+		copy = bytes.clone();
+		copy[4] = 0;
+		checkInvalid(copy, StreamCorruptedException.class);
+		// an invalid key length
+		copy = bytes.clone();
+		copy[5] = 31;
+		checkInvalid(copy, StreamCorruptedException.class);
+		// an invalid record
+		copy = bytes.clone();
+		copy[7] = (byte) 0x81;
+		checkInvalid(copy, StreamCorruptedException.class);
+		// an oversized separator
+		copy = Arrays.copyOf(bytes, 10);
+		copy[6] = 2;
+		copy[7] = (byte) 0xff;
+		copy[8] = (byte) 0xff;
+		checkInvalid(copy, StreamCorruptedException.class);
+
+		// formats with separators that could not be read are not written
+		char[] spaces = new char[Format.MAX_COMPACT_SEPARATOR + 1];
+		Arrays.fill(spaces, ' ');
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		KeycodeOutputStream out = new KeycodeOutputStream(bytesOut);
+		try {
+			out.write(Format.custom(new String(spaces), "\n").keycode(new byte[32]));
+			fail();
+		} catch (InvalidObjectException e) {
+			/* expected */
+		}
+		// and the stream remains valid
+		Keycode keycode = keycodes(r, Format.standard(), 1).get(0);
+		out.write(keycode);
+		out.close();
+		List<Keycode> read = new KeycodeInputStream(new ByteArrayInputStream(bytesOut.toByteArray())).readAll();
+		assertEquals(Arrays.asList(keycode), read);
+	}
+
+	private void checkInvalid(byte[] bytes, Class<? extends IOException> type) {
+		try {
+			new KeycodeInputStream(new ByteArrayInputStream(bytes)).readAll();
+			fail();
+		} catch (IOException e) {
+			assertEquals(type, e.getClass());
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeMapTest extends TestCase {
+
+	// keys that share a stripe and collide heavily in small tables
+	private static Keycode colliding(Random r) {
+		ByteBuffer buffer = ByteBuffer.allocate(32);
+		buffer.putLong(0x0123456789000000L | r.nextInt(4) << 6 | r.nextInt(4));
+		for (int i = 0; i < 3; i++) buffer.putLong(r.nextInt(8));
+		return Format.plain().keycode(buffer.array(), (byte) r.nextInt(2));
+	}
+
+	public void testAgainstHashMap() {
+		Random r = new Random(0L);
+		KeycodeMap map = new KeycodeMap(0);
+		KeycodeSet set = new KeycodeSet(0);
+		Map<Keycode, Long> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			Keycode keycode = colliding(r);
+			Long value = expected.get(keycode);
+			switch (r.nextInt(4)) {
+			case 0:
+			case 1:
+				long v = r.nextLong();
+				assertEquals(value == null, map.put(keycode, v));
+				assertEquals(value == null, set.add(keycode));
+				expected.put(keycode, v);
+				break;
+			case 2:
+				assertEquals(value != null, map.remove(keycode));
+				assertEquals(value != null, set.remove(keycode.getKey(), keycode.getTag()));
+				expected.remove(keycode);
+				break;
+			case 3:
+				assertEquals(value == null ? -1L : value.longValue(), map.get(keycode, -1L));
+				assertEquals(value != null, map.containsKey(keycode.toString()));
+				assertEquals(value != null, set.contains(keycode));
+				break;
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.size(), set.size());
+		}
+		for (Map.Entry<Keycode, Long> entry : expected.entrySet()) {
+			Keycode keycode = entry.getKey();
+			assertEquals(entry.getValue().longValue(), map.get(keycode.getKey(), keycode.getTag(), 0L));
+			assertTrue(set.contains(keycode.getKey(), keycode.getTag()));
+		}
+		map.clear();
+		set.clear();
+		assertEquals(0, map.size());
+		assertEquals(0, set.size());
+		assertFalse(map.containsKey(expected.keySet().iterator().next()));
+	}
+
+	public void testCodes() {
+		Random r = new Random(0L);
+		KeycodeSet set = new KeycodeSet(1000);
+		KeycodeMap map = new KeycodeMap(1000);
+		byte[] key = new byte[32];
+		for (int i = 0; i < 1000; i++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			Keycode keycode = Format.standard().keycode(key, tag);
+			assertTrue(set.add(key, tag));
+			assertTrue(map.put(keycode, i));
+			// formats, and so whitespace, are disregarded
+			String code = keycode.toString();
+			assertTrue(set.contains(code));
+			assertTrue(set.contains(Format.plain().keycode(keycode)));
+			assertEquals(i, map.get(code, -1L));
+			assertEquals(i, map.get(Format.plain().keycode(keycode).toString(), -1L));
+			// keys are distinguished by tag
+			assertFalse(set.contains(key, (byte) (tag ^ 1)));
+			// invalid codes are never present
+			String invalid = code.substring(0, code.length() - 1) + (code.charAt(code.length() - 1) == '1' ? '2' : '1');
+			assertFalse(set.contains(invalid));
+			assertEquals(-1L, map.get(invalid, -1L));
+		}
+		assertEquals(1000, set.size());
+		assertFalse(set.contains(""));
+		try {
+			set.add(key, (byte) -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			map.get(new byte[31], (byte) 0, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testConcurrent() throws InterruptedException {
+		final KeycodeMap map = new KeycodeMap(0);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random r = new Random(seed);
+						byte[] key = new byte[32];
+						for (int i = 0; i < 20000; i++) {
+							r.nextBytes(key);
+							map.put(key, (byte) seed, i);
+							assertEquals(i, map.get(key, (byte) seed, -1L));
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		if (failure.get() != null) throw new AssertionError(failure.get());
+		assertEquals(80000, map.size());
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import static com.tomgibara.keycode.Encoder.CHARS_32;
+
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Failure;
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeParserTest extends TestCase {
+
+	public void testEntry() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		Format[] formats = { Format.plain(), Format.standard(), Format.custom("  ", "\r\n") };
+		for (int test = 0; test < 100; test++) {
+			r.nextBytes(key);
+			Keycode keycode = formats[test % formats.length].keycode(key, (byte) r.nextInt(128));
+			String str = keycode.toString();
+			KeycodeParser parser = keycode.getFormat().parser();
+			int count = 0;
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(i);
+				if (!Character.isWhitespace(c)) count++;
+				assertEquals(count, parser.accept(c));
+				assertEquals(count / 9, parser.getValidRows());
+				assertEquals(count == 63, parser.isComplete());
+			}
+			assertEquals(str, parser.getInput());
+			assertEquals(keycode, parser.getKeycode());
+			assertEquals(str, parser.getKeycode().toString());
+			// backspacing undoes every character
+			for (int i = str.length() - 1; i >= 0; i--) {
+				if (!Character.isWhitespace(str.charAt(i))) count--;
+				assertEquals(count, parser.backspace());
+				assertEquals(count / 9, parser.getValidRows());
+			}
+			assertEquals(0, parser.backspace());
+			assertEquals(63, parser.accept(str));
+			assertEquals(keycode, parser.getKeycode());
+			parser.reset();
+			assertEquals("", parser.getInput());
+			assertEquals(0, parser.getResult());
+		}
+	}
+
+	public void testModifications() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		String str = Format.plain().keycode(key).toString();
+		StringBuilder sb = new StringBuilder(str);
+		KeycodeParser parser = Format.plain().parser();
+		for (int index = 0; index < 63; index++) {
+			char oldChar = sb.charAt(index);
+			for (char newChar : CHARS_32) {
+				if (newChar == oldChar) continue;
+				sb.setCharAt(index, newChar);
+				parser.reset();
+				int result = parser.accept(sb);
+				// every error that parsing detects is detected as the code is entered
+				assertEquals(Format.plain().validate(sb) < 0, result < 0);
+				if (result < 0) {
+					// the failure is reported once its row is entered
+					parser.reset();
+					int row = index / 9;
+					assertEquals(row * 9, parser.accept(sb.subSequence(0, row * 9)));
+					assertTrue(parser.accept(sb.subSequence(row * 9, row * 9 + 9)) < 0);
+					assertEquals(row, parser.getValidRows());
+					// and removing the erroneous character clears it
+					for (int i = row * 9 + 9; i > index; i--) parser.backspace();
+					assertEquals(index, parser.getResult());
+					assertEquals(index + 1, parser.accept(oldChar));
+				}
+			}
+			sb.setCharAt(index, oldChar);
+		}
+	}
+
+	public void testFailures() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		String str = Format.standard().keycode(key).toString();
+		KeycodeParser parser = Format.standard().parser();
+
+		// invalid characters are reported immediately, at their position in the input
+		int result = parser.accept(str.substring(0, 5) + 'O');
+		assertEquals(Failure.INVALID_CHARACTER, Failure.of(result));
+		assertEquals(5, Failure.position(result));
+		assertEquals(1, Failure.row(result));
+		// characters entered after a failure do not clear it
+		assertEquals(result, parser.accept(" AB"));
+		assertEquals(result, parser.backspace());
+		assertEquals(result, parser.backspace());
+		assertEquals(result, parser.backspace());
+		assertEquals(4, parser.backspace());
+
+		// digits are expected in the last row
+		parser.reset();
+		result = parser.accept(str.substring(0, str.length() - 11) + 'A');
+		assertEquals(Failure.EXPECTED_DIGIT, Failure.of(result));
+		assertEquals(7, Failure.row(result));
+
+		// excess characters are reported
+		parser.reset();
+		assertEquals(63, parser.accept(str));
+		result = parser.accept("\n1");
+		assertEquals(Failure.LONG_CODE, Failure.of(result));
+		assertEquals(str.length() + 1, Failure.position(result));
+		assertEquals(63, parser.backspace());
+		assertTrue(parser.isComplete());
+
+		try {
+			parser.reset();
+			parser.getKeycode();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+}
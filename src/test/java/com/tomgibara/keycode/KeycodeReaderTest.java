@@ -0,0 +1,117 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeReaderTest extends TestCase {
+
+	private static List<Keycode> keycodes(Random r, int count) {
+		List<Keycode> keycodes = new ArrayList<>();
+		byte[] key = new byte[32];
+		for (int i = 0; i < count; i++) {
+			r.nextBytes(key);
+			keycodes.add(Format.plain().keycode(key, (byte) r.nextInt(128)));
+		}
+		return keycodes;
+	}
+
+	public void testRoundTrip() throws IOException {
+		Random r = new Random(0L);
+		// enough keycodes to span many buffers
+		List<Keycode> keycodes = keycodes(r, 500);
+		Format[] formats = { Format.plain(), Format.standard(), Format.custom("\t", "\r\n") };
+		for (Format format : formats) {
+			StringWriter out = new StringWriter();
+			KeycodeWriter writer = format.writer(out);
+			for (int i = 0; i < keycodes.size(); i++) {
+				Keycode keycode = keycodes.get(i);
+				if (i % 2 == 0) {
+					writer.write(keycode);
+				} else {
+					writer.writeKey(keycode.getKey(), 0, keycode.getTag());
+				}
+			}
+			writer.flush();
+			String str = out.toString();
+			// the output consists of the formatted keycodes
+			String first = format.keycode(keycodes.get(0)).toString();
+			assertTrue(str.startsWith(first));
+			assertTrue(Character.isWhitespace(str.charAt(first.length())));
+
+			KeycodeReader reader = format.reader(new StringReader(str));
+			for (Keycode keycode : keycodes) {
+				Keycode read = reader.read();
+				assertEquals(format, read.getFormat());
+				assertEquals(format.keycode(keycode), read);
+			}
+			assertNull(reader.read());
+			assertEquals(keycodes.size(), reader.getCount());
+			reader.close();
+
+			// keys can be read into an array
+			reader = Format.plain().reader(new StringReader(str));
+			byte[] key = new byte[40];
+			for (Keycode keycode : keycodes) {
+				assertEquals(keycode.getTag(), reader.readKey(key, 8));
+				assertTrue(Arrays.equals(keycode.getKey(), Arrays.copyOfRange(key, 8, 40)));
+			}
+			assertEquals(-1, reader.readKey(key, 0));
+		}
+	}
+
+	public void testInvalid() throws IOException {
+		Random r = new Random(0L);
+		List<Keycode> keycodes = keycodes(r, 3);
+		StringBuilder sb = new StringBuilder();
+		for (Keycode keycode : keycodes) {
+			sb.append(Format.standard().keycode(keycode)).append("\n\n");
+		}
+		// corrupt the second keycode
+		int index = sb.indexOf("\n\n") + 2;
+		sb.setCharAt(index, sb.charAt(index) == '1' ? '2' : '1');
+		// and truncate the last
+		sb.setLength(sb.length() - 5);
+
+		KeycodeReader reader = Format.plain().reader(new StringReader(sb.toString()));
+		assertEquals(keycodes.get(0), reader.read());
+		try {
+			reader.read();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("invalid keycode 2"));
+		}
+		try {
+			reader.read();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("truncated keycode 3"));
+		}
+		assertNull(reader.read());
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import com.tomgibara.keycode.Keycode.Failure;
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeStatsTest extends TestCase {
+
+	public void testBuckets() {
+		assertEquals(0, KeycodeStats.bucket(-1L));
+		assertEquals(0, KeycodeStats.bucket(0L));
+		assertEquals(0, KeycodeStats.bucket(1L));
+		assertEquals(1, KeycodeStats.bucket(2L));
+		assertEquals(1, KeycodeStats.bucket(3L));
+		assertEquals(10, KeycodeStats.bucket(1024L));
+		assertEquals(KeycodeStats.BUCKETS - 1, KeycodeStats.bucket(Long.MAX_VALUE));
+	}
+
+	public void testCounts() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		String code = Format.plain().keycode(key).toString();
+		KeycodeStats stats = new KeycodeStats();
+		stats.parsed(Format.plain().validate(code), 32, 100L);
+		stats.parsed(Format.plain().validate(code.substring(1)), 32, 300L);
+		// corrupt the third row and the last row
+		stats.parsed(Format.plain().validate(code.substring(0, 18) + swap(code.charAt(18)) + code.substring(19)), 32, 1000L);
+		stats.parsed(Format.plain().validate(code.substring(0, 62) + (code.charAt(62) == '1' ? '2' : '1')), 32, 2000L);
+		stats.encoded();
+
+		assertEquals(4, stats.getParseCount());
+		assertEquals(3, stats.getParseFailureCount());
+		assertEquals(1, stats.getEncodeCount());
+		Map<String, Long> failures = stats.getFailureCounts();
+		assertEquals(Failure.values().length, failures.size());
+		assertEquals(1L, failures.get(Failure.SHORT_CODE.name()).longValue());
+		assertEquals(2L, failures.get(Failure.INVALID_CHECKSUM.name()).longValue());
+		assertEquals(0L, failures.get(Failure.INVALID_TAG_FLIP.name()).longValue());
+		long[] rows = stats.getChecksumFailuresByRow();
+		assertEquals(7, rows.length);
+		assertEquals(1L, rows[2]);
+		assertEquals(1L, rows[6]);
+		assertEquals(0L, rows[0]);
+		assertEquals(0.25, stats.getChecksumFailureRatesByRow()[2]);
+		long[] histogram = stats.getParseLatencyHistogram();
+		assertEquals(1L, histogram[6]);
+		assertEquals(1L, histogram[8]);
+		assertEquals(1L, histogram[9]);
+		assertEquals(1L, histogram[10]);
+		assertEquals(850.0, stats.getMeanParseNanos());
+
+		// the rows of other key sizes are not counted with those of 256 bit keys
+		Format shorter = Format.plain().withKeySize(128);
+		String other = shorter.keycode(new byte[16]).toString();
+		stats.parsed(shorter.validate(other.substring(0, 35) + (other.charAt(35) == '1' ? '2' : '1')), 16, 100L);
+		assertEquals(5, stats.getParseCount());
+		assertEquals(3L, stats.getFailureCounts().get(Failure.INVALID_CHECKSUM.name()).longValue());
+		assertEquals(0L, stats.getChecksumFailuresByRow()[3]);
+		assertEquals(0.25, stats.getChecksumFailureRatesByRow()[2]);
+
+		stats.reset();
+		assertEquals(0, stats.getParseCount());
+		assertEquals(0, stats.getParseFailureCount());
+		assertEquals(0.0, stats.getMeanParseNanos());
+		assertEquals(0.0, stats.getChecksumFailureRatesByRow()[2]);
+	}
+
+	public void testMXBean() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		ObjectName name = new ObjectName(KeycodeStatsMXBean.OBJECT_NAME);
+		KeycodeStats stats = new KeycodeStats();
+		server.registerMBean(stats, name);
+		stats.parsed(Format.plain().validate(""), 32, 10L);
+		assertEquals(1L, server.getAttribute(name, "ParseCount"));
+		assertEquals(1L, server.getAttribute(name, "ParseFailureCount"));
+		assertTrue(server.getAttribute(name, "FailureCounts") instanceof TabularData);
+		assertEquals(7, ((long[]) server.getAttribute(name, "ChecksumFailuresByRow")).length);
+		server.invoke(name, "reset", null, null);
+		assertEquals(0L, server.getAttribute(name, "ParseCount"));
+	}
+
+	// a different base32 character
+	private static char swap(char c) {
+		return c == 'A' ? 'B' : 'A';
+	}
+
+}
@@ -24,9 +24,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Random;
 
+import com.tomgibara.keycode.Keycode.Failure;
 import com.tomgibara.keycode.Keycode.Format;
 
 import junit.framework.TestCase;
@@ -168,6 +173,425 @@ public class KeycodeTest extends TestCase {
 		assertEquals(format == Format.platform(), f == Format.platform());
 	}
 
+	// a keycode serialized when the key was held in a byte array
+	private static final String LEGACY_SERIALIZED =
+			"aced00057372001d636f6d2e746f6d6769626172612e6b6579636f64652e4b6579636f64658881c0241dbab0b80200034c00" +
+			"04636f64657400124c6a6176612f6c616e672f537472696e673b4c0006666f726d61747400264c636f6d2f746f6d67696261" +
+			"72612f6b6579636f64652f4b6579636f646524466f726d61743b5b00036b65797400025b42787074003f3143513541584c59" +
+			"37514b4c475643545159464e48434655304852365244513139454151575641334a504c33354d333659343552564633373431" +
+			"343234323173720024636f6d2e746f6d6769626172612e6b6579636f64652e4b6579636f646524466f726d6174931b800c84" +
+			"d68d5c0200024c000e67726f7570536570617261746f7271007e00014c000d6c696e65536570617261746f7271007e000178" +
+			"70740001207400010a757200025b42acf317f8060854e00200007870000000210b30557a9fc4e90e33587da2c7ec11365b80" +
+			"a5caef14395e83a8cdf2173c61865d";
+
+	public void testLegacySerialization() throws IOException, ClassNotFoundException {
+		byte[] bytes = new byte[LEGACY_SERIALIZED.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(LEGACY_SERIALIZED.substring(i * 2, i * 2 + 2), 16);
+		}
+		byte[] key = new byte[32];
+		for (int i = 0; i < 32; i++) key[i] = (byte) (i * 37 + 11);
+		Keycode expected = Format.standard().keycode(key, (byte) 93);
+
+		ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		Keycode keycode = (Keycode) oi.readObject();
+		assertEquals(expected, keycode);
+		assertEquals(expected.hashCode(), keycode.hashCode());
+		assertSame(Format.standard(), keycode.getFormat());
+		assertEquals((byte) 93, keycode.getTag());
+		assertTrue(Arrays.equals(key, keycode.getKey()));
+		assertEquals("1CQ 5AX LY7\nQKL GVC TQY\nFNH CFU 0HR\n6RD Q19 EAQ\nWVA 3JP L35\nM36 Y45 RVF\n374 142 421", keycode.toString());
+	}
+
+	public void testCompactSerialization() throws IOException, ClassNotFoundException {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		Keycode[] keycodes = {
+				Format.standard().keycode(key, (byte) 93),
+				Format.custom("\t", "\r\n").keycode(key),
+				Format.plain().withKeySize(128).keycode(Arrays.copyOf(key, 16), (byte) 1),
+		};
+		for (Keycode keycode : keycodes) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ObjectOutputStream oo = new ObjectOutputStream(out);
+			oo.writeObject(keycode);
+			oo.close();
+			byte[] bytes = out.toByteArray();
+			// the key, tag and format are written without the code
+			assertTrue(bytes.length < LEGACY_SERIALIZED.length() / 2 / 3);
+			ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			Keycode copy = (Keycode) oi.readObject();
+			assertEquals(keycode, copy);
+			assertEquals(keycode.getFormat(), copy.getFormat());
+			assertEquals(keycode.getTag(), copy.getTag());
+			assertTrue(Arrays.equals(keycode.getKey(), copy.getKey()));
+			assertEquals(keycode.toString(), copy.toString());
+		}
+	}
+
+	public void testLazyCode() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		for (int test = 0; test < 100; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			Keycode keycode = Format.standard().keycode(key, tag);
+			Keycode copy = Format.standard().keycode(key, tag);
+			// equality and hashing must not depend on whether the code has been computed
+			assertEquals(keycode.hashCode(), copy.hashCode());
+			assertEquals(keycode, copy);
+			char[] chars = new char[Format.standard().getCodeLength()];
+			copy.formatTo(chars, 0);
+			String str = copy.toString();
+			assertEquals(str, new String(chars));
+			assertEquals(keycode, copy);
+			assertEquals(keycode.hashCode(), copy.hashCode());
+			Keycode parsed = Format.standard().parse(str);
+			assertEquals(keycode, parsed);
+			assertEquals(keycode.hashCode(), parsed.hashCode());
+			assertEquals(str, parsed.toString());
+			assertTrue(Arrays.equals(key, parsed.getKey()));
+			assertEquals(tag, parsed.getTag());
+			Keycode plain = Format.plain().keycode(keycode);
+			assertFalse(plain.equals(keycode));
+			assertEquals(str.replaceAll("\\s", ""), plain.toString());
+		}
+	}
+
+	public void testCanonicalFormats() throws IOException, ClassNotFoundException {
+		assertSame(Format.standard(), Format.custom(" ", "\n"));
+		assertSame(Format.plain(), Format.custom("", ""));
+		assertSame(Format.platform(), Format.custom(" ", String.format("%n")));
+		// other formats are equal, but not retained
+		Format custom = Format.custom("\t", "\r\n");
+		assertEquals(custom, Format.custom("\t", "\r\n"));
+		assertEquals(custom.hashCode(), Format.custom("\t", "\r\n").hashCode());
+		assertEquals(custom.keycode(new byte[32]), Format.custom("\t", "\r\n").keycode(new byte[32]));
+		assertFalse(custom.equals(Format.custom("\t", "\n")));
+		assertFalse(custom.equals(custom.withKeySize(128)));
+		assertFalse(Format.custom("", " ").equals(Format.custom(" ", "")));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oo = new ObjectOutputStream(out);
+		oo.writeObject(custom);
+		oo.close();
+		ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(custom, oi.readObject());
+	}
+
+	public void testRenderPlans() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		String[] separators = { "", " ", "\t", "\r\n", "  \n" };
+		for (int test = 0; test < 10; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			String code = Format.plain().keycode(key, tag).toString();
+			for (String groupSeparator : separators) {
+				for (String lineSeparator : separators) {
+					Format format = Format.custom(groupSeparator, lineSeparator);
+					StringBuilder sb = new StringBuilder();
+					for (int i = 0; i < 63; i += 3) {
+						if (i > 0) sb.append(i % 9 == 0 ? lineSeparator : groupSeparator);
+						sb.append(code, i, i + 3);
+					}
+					String expected = sb.toString();
+					Keycode keycode = format.keycode(key, tag);
+					String str = keycode.toString();
+					assertEquals(expected, str);
+					assertSame(str, keycode.toString());
+					char[] chars = new char[format.getCodeLength()];
+					format.encodeTo(key, 0, tag, chars, 0);
+					assertEquals(expected, new String(chars));
+					assertEquals(expected, format.keycode(format.parse(expected)).toString());
+				}
+			}
+		}
+	}
+
+	public void testParseStrict() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		Format[] formats = { Format.plain(), Format.standard(), Format.custom("", "\r\n"), Format.custom("\t", ""), Format.custom("  ", "\n\n") };
+		for (int test = 0; test < 20; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			for (Format format : formats) {
+				Keycode keycode = format.keycode(key, tag);
+				String str = keycode.toString();
+				assertEquals(keycode, format.parseStrict(str));
+				assertEquals(keycode, format.parseStrict(new StringBuilder(str)));
+				// other layouts are parsed leniently
+				for (Format other : formats) {
+					assertEquals(keycode, format.parseStrict(other.keycode(keycode).toString()));
+				}
+				// the same failures are reported
+				char[] chars = str.toCharArray();
+				int i = chars.length - 1 - r.nextInt(5);
+				chars[i] = chars[i] == '1' ? '2' : '1';
+				String invalid = new String(chars);
+				String expected = null;
+				try {
+					format.parse(invalid);
+				} catch (IllegalArgumentException e) {
+					expected = e.getMessage();
+				}
+				try {
+					format.parseStrict(invalid);
+					assertNull(expected);
+				} catch (IllegalArgumentException e) {
+					assertEquals(expected, e.getMessage());
+				}
+			}
+		}
+	}
+
+	public void testParseOverloads() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		for (int test = 0; test < 50; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			Keycode keycode = Format.standard().keycode(key, tag);
+			String code = keycode.toString();
+			// some codes are invalid
+			if (test % 5 == 4) {
+				char[] chars = code.toCharArray();
+				int i = r.nextInt(chars.length);
+				chars[i] = chars[i] == 'A' ? '#' : 'A';
+				code = new String(chars);
+			}
+			String expected;
+			try {
+				assertEquals(keycode, Format.standard().parse((CharSequence) code));
+				expected = null;
+			} catch (IllegalArgumentException e) {
+				expected = e.getMessage();
+			}
+			char[] chars = ("xx" + code + "yyy").toCharArray();
+			CharBuffer buffer = CharBuffer.wrap(chars, 2, code.length());
+			CharBuffer direct = ByteBuffer.allocateDirect(code.length() * 2).asCharBuffer().put(code);
+			direct.flip();
+			for (int i = 0; i < 5; i++) {
+				try {
+					Keycode parsed;
+					switch (i) {
+					case 0: parsed = Format.standard().parse(code); break;
+					case 1: parsed = Format.standard().parse(chars, 2, code.length()); break;
+					case 2: parsed = Format.standard().parse(buffer); break;
+					case 3: parsed = Format.standard().parse(CharBuffer.wrap(code)); break;
+					default: parsed = Format.standard().parse(direct); break;
+					}
+					assertNull(expected);
+					assertEquals(keycode, parsed);
+				} catch (IllegalArgumentException e) {
+					assertEquals(expected, e.getMessage());
+				}
+			}
+			// buffer positions are unchanged
+			assertEquals(2, buffer.position());
+			assertEquals(0, direct.position());
+		}
+	}
+
+	public void testEncodeTo() throws IOException {
+		Random r = new Random(0L);
+		byte[] key = new byte[40];
+		Format[] formats = { Format.plain(), Format.standard(), Format.platform(), Format.custom("  ", "\t") };
+		for (int test = 0; test < 100; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			for (Format format : formats) {
+				String expected = format.keycode(Arrays.copyOfRange(key, 3, 35), tag).toString();
+				assertEquals(expected.length(), format.getCodeLength());
+
+				char[] chars = new char[expected.length() + 10];
+				assertEquals(expected.length(), format.encodeTo(key, 3, tag, chars, 5));
+				assertEquals(expected, new String(chars, 5, expected.length()));
+
+				Keycode keycode = format.parse(expected);
+				Arrays.fill(chars, ' ');
+				assertEquals(expected.length(), keycode.formatTo(chars, 7));
+				assertEquals(expected, new String(chars, 7, expected.length()));
+
+				StringBuilder sb = new StringBuilder("x");
+				keycode.formatTo(sb);
+				assertEquals("x" + expected, sb.toString());
+				StringWriter writer = new StringWriter();
+				keycode.formatTo(writer);
+				assertEquals(expected, writer.toString());
+
+				KeycodeCodec codec = format.codec();
+				assertEquals(expected, codec.encode(key, 3, tag));
+				sb.setLength(0);
+				codec.encodeTo(key, 3, tag, sb);
+				codec.encodeTo(key, 3, tag, sb);
+				assertEquals(expected + expected, sb.toString());
+			}
+		}
+	}
+
+	public void testKeySizes() throws IOException, ClassNotFoundException {
+		int[] sizes = { 128, 192, 256, 320, 384, 448, 512 };
+		int[] rows = { 4, 6, 7, 9, 11, 12, 14 };
+		assertSame(Format.standard(), Format.standard().withKeySize(256));
+		Random r = new Random(0L);
+		for (int i = 0; i < sizes.length; i++) {
+			Format format = Format.standard().withKeySize(sizes[i]);
+			assertSame(format, Format.custom(" ", "\n").withKeySize(sizes[i]));
+			assertEquals(sizes[i], format.getKeySize());
+			assertEquals(rows[i], format.getRowCount());
+			byte[] key = new byte[sizes[i] / 8];
+			for (int test = 0; test < 100; test++) {
+				r.nextBytes(key);
+				byte tag = (byte) r.nextInt(128);
+				Keycode keycode = format.keycode(key, tag);
+				String str = keycode.toString();
+				assertEquals(format.getCodeLength(), str.length());
+				String[] lines = str.split("\n");
+				assertEquals(rows[i], lines.length);
+				assertEquals(lines[lines.length - 1], keycode.getLastRow());
+				assertEquals(lines[lines.length - 1], format.lastRow(key, tag));
+
+				Keycode parsed = format.parse(str);
+				assertEquals(keycode, parsed);
+				assertEquals(keycode.hashCode(), parsed.hashCode());
+				assertTrue(Arrays.equals(key, parsed.getKey()));
+				assertEquals(tag, parsed.getTag());
+				assertEquals(keycode, format.parseStrict(str));
+				assertEquals(keycode, format.parse(str.toCharArray(), 0, str.length()));
+				assertEquals(keycode, format.parse(str.getBytes(Charset.forName("ASCII")), 0, str.length()));
+				byte[] out = new byte[key.length];
+				assertEquals(tag, format.tryParse(str, out));
+				assertTrue(Arrays.equals(key, out));
+
+				String plain = Format.plain().withKeySize(sizes[i]).keycode(keycode).toString();
+				assertEquals(rows[i] * 9, plain.length());
+				assertEquals(keycode, format.parse(plain));
+			}
+
+			// keycodes are serializable with their formats
+			Keycode keycode = format.keycode(key);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oo = new ObjectOutputStream(bytes);
+			oo.writeObject(keycode);
+			oo.close();
+			ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			Keycode copy = (Keycode) oi.readObject();
+			assertEquals(keycode, copy);
+			assertSame(format, copy.getFormat());
+
+			// codes are specific to their key size
+			if (sizes[i] != 256) {
+				assertTrue(Format.standard().validate(keycode.toString()) < 0);
+				assertTrue(format.validate(Format.standard().keycode(new byte[32]).toString()) < 0);
+				try {
+					Format.standard().keycode(keycode);
+					fail();
+				} catch (IllegalArgumentException e) {
+					/* expected */
+				}
+				try {
+					format.keycode(new byte[32]);
+					fail();
+				} catch (IllegalArgumentException e) {
+					/* expected */
+				}
+				try {
+					format.parser();
+					fail();
+				} catch (IllegalStateException e) {
+					/* expected */
+				}
+			}
+
+			// checksum failures identify the row
+			String plain = Format.plain().withKeySize(sizes[i]).keycode(keycode).toString();
+			int last = plain.length() - 9;
+			int result = format.validate(replace(plain, last + 1, plain.charAt(last + 1) == '1' ? '2' : '1'));
+			assertEquals(Failure.INVALID_CHECKSUM, Failure.of(result));
+			assertEquals(rows[i], Failure.row(result));
+			assertEquals(last, Failure.position(result));
+		}
+
+		// the bits that pad the final base32 row must be zero
+		Format format = Format.plain().withKeySize(128);
+		char[] chars = format.keycode(new byte[16]).toString().toCharArray();
+		chars[25] = '1';
+		chars[26] = TAQG32.compute(chars, 18, 26);
+		int result = format.validate(new String(chars));
+		assertEquals(Failure.INVALID_PADDING, Failure.of(result));
+		assertEquals(24, Failure.position(result));
+		assertEquals(3, Failure.row(result));
+
+		for (int size : new int[] { 0, 64, 100, 136, 576 }) {
+			try {
+				Format.standard().withKeySize(size);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+	}
+
+	public void testBytes() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		Format[] formats = { Format.plain(), Format.standard(), Format.custom("  ", "\r\n"), Format.custom("", "\n"), Format.custom("\t", "") };
+		for (int test = 0; test < 100; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			for (Format format : formats) {
+				// written before the keycode has rendered its text
+				Keycode keycode = format.keycode(key, tag);
+				String expected = format.keycode(key, tag).toString();
+				int length = expected.length();
+
+				ByteBuffer heap = ByteBuffer.allocate(length + 4);
+				heap.position(2);
+				assertEquals(length, keycode.writeTo(heap));
+				assertEquals(length + 2, heap.position());
+				assertEquals(expected, new String(heap.array(), 2, length, Charset.forName("US-ASCII")));
+
+				ByteBuffer direct = ByteBuffer.allocateDirect(length);
+				keycode.writeTo(direct);
+				direct.flip();
+				assertEquals(keycode, format.parse(direct));
+				assertFalse(direct.hasRemaining());
+
+				assertEquals(keycode, format.parse(heap.array(), 2, length));
+				assertEquals(expected, format.parse(heap.array(), 2, length).toString());
+			}
+		}
+
+		// whitespace is tolerated as it is for characters
+		Keycode keycode = Format.plain().keycode(key);
+		String spaced = "\t " + keycode.toString().substring(0, 30) + "\r\n" + keycode.toString().substring(30) + " ";
+		assertEquals(keycode, Format.plain().parse(ByteBuffer.wrap(spaced.getBytes(Charset.forName("US-ASCII")))));
+
+		// failures are reported as they are for characters
+		byte[] bytes = keycode.toString().getBytes(Charset.forName("US-ASCII"));
+		bytes[10] = (byte) 0xc3;
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		try {
+			Format.plain().parse(buffer);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("non-ascii character at 11", e.getMessage());
+			assertEquals(0, buffer.position());
+		}
+
+		// insufficient space leaves the buffer untouched
+		ByteBuffer small = ByteBuffer.allocate(62);
+		try {
+			keycode.writeTo(small);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, small.position());
+		}
+	}
+
 	public void testNoDigitPairs() {
 		Format format = Format.plain();
 		Random r = new Random();
@@ -194,6 +618,60 @@ public class KeycodeTest extends TestCase {
 		checkBad("FBEJKN2TTRMMR4UK6FEHYQP9ENLL3XG8CW0E0YAYV06F21AYLMLPR0651234106"); // unnecessary tag bit flip
 	}
 
+	public void testTryParse() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		r.nextBytes(key);
+		Keycode keycode = Format.plain().keycode(key, (byte) 99);
+		String plain = keycode.toString();
+		String standard = Format.standard().keycode(keycode).toString();
+
+		byte[] out = new byte[32];
+		assertEquals(99, Format.plain().tryParse(standard, out));
+		assertTrue(Arrays.equals(key, out));
+		assertEquals(99, Format.plain().validate(plain));
+		assertNull(Failure.of(99));
+		assertEquals(-1, Failure.position(99));
+		assertEquals(0, Failure.row(99));
+
+		checkFailure("", Failure.EMPTY_CODE, 0, 0);
+		checkFailure(" \n", Failure.EMPTY_CODE, 2, 0);
+		checkFailure(plain.substring(0, 10) + '\u00e9', Failure.NON_ASCII_CHARACTER, 10, 0);
+		checkFailure(plain.substring(0, 10) + 'O', Failure.INVALID_CHARACTER, 10, 0);
+		checkFailure(plain.substring(0, 62), Failure.SHORT_CODE, 62, 0);
+		checkFailure(plain + "1", Failure.LONG_CODE, 63, 0);
+		checkFailure(replace(plain, 58, 'A'), Failure.EXPECTED_DIGIT, 58, 7);
+		checkFailure(replace(plain, 57, '0'), Failure.INVALID_ZERO, 57, 7);
+		checkFailure(replace(plain, 20, plain.charAt(20) == 'A' ? 'B' : 'A'), Failure.INVALID_CHECKSUM, 18, 3);
+		checkFailure(replace(plain, 55, plain.charAt(55) == '1' ? '2' : '1'), Failure.INVALID_CHECKSUM, 54, 7);
+		checkFailure("000000000000000000000000000000000000000000000000000000810102101", Failure.INVALID_DIGIT_TRIPLE, 54, 7);
+		checkFailure("000000000000000000000000000000000000000000000000000000102102118", Failure.INVALID_DIGIT_PAIR, 60, 7);
+		checkFailure("FBEJKN2TTRMMR4UK6FEHYQP9ENLL3XG8CW0E0YAYV06F21AYLMLPR0651234106", Failure.INVALID_TAG_FLIP, 57, 7);
+
+		// positions index the supplied characters, including whitespace
+		String bad = replace(standard, standard.length() - 2, 'A');
+		checkFailure(bad, Failure.EXPECTED_DIGIT, bad.length() - 2, 7);
+		checkFailure(standard.substring(0, 4), Failure.SHORT_CODE, 4, 0);
+	}
+
+	private String replace(String str, int index, char c) {
+		StringBuilder sb = new StringBuilder(str);
+		sb.setCharAt(index, c);
+		return sb.toString();
+	}
+
+	private void checkFailure(String code, Failure failure, int position, int row) {
+		byte[] key = new byte[32];
+		int result = Format.plain().tryParse(code, key);
+		assertTrue(result < 0);
+		assertTrue(Arrays.equals(new byte[32], key));
+		assertEquals(result, Format.plain().validate(code));
+		assertEquals(failure, Failure.of(result));
+		assertEquals(position, Failure.position(result));
+		assertEquals(row, Failure.row(result));
+		checkBad(code);
+	}
+
 	private void checkBad(String bad) {
 		try {
 			Keycode.Format.plain().parse(bad);
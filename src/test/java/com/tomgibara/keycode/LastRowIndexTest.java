@@ -0,0 +1,138 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class LastRowIndexTest extends TestCase {
+
+	public void testLastRow() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		Format[] formats = { Format.plain(), Format.standard(), Format.custom("\t\t", "\n") };
+		for (int test = 0; test < 1000; test++) {
+			r.nextBytes(key);
+			byte tag = (byte) r.nextInt(128);
+			for (Format format : formats) {
+				Keycode keycode = format.keycode(key, tag);
+				String str = keycode.toString();
+				String lastRow = format.lastRow(key, tag);
+				assertTrue(str.endsWith(lastRow));
+				assertEquals(9 + 2 * format.getGroupSeparator().length(), lastRow.length());
+				assertEquals(lastRow, keycode.getLastRow());
+			}
+		}
+	}
+
+	public void testLookup() {
+		Random r = new Random(0L);
+		List<Keycode> keycodes = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			byte[] key = new byte[32];
+			r.nextBytes(key);
+			// few distinct last rows, so that many keys match each
+			key[30] = (byte) r.nextInt(4);
+			byte tag = (byte) r.nextInt(8);
+			keycodes.add(Format.standard().keycode(key, tag));
+		}
+		LastRowIndex index = LastRowIndex.of(keycodes);
+		assertEquals(keycodes.size(), index.size());
+		for (int test = 0; test < 200; test++) {
+			Keycode probe = keycodes.get(r.nextInt(keycodes.size()));
+			String lastRow = probe.getLastRow();
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < keycodes.size(); i++) {
+				if (keycodes.get(i).getLastRow().equals(lastRow)) expected.add(i);
+			}
+			int[] matches = index.lookup(lastRow);
+			assertEquals(expected.size(), matches.length);
+			for (int i = 0; i < matches.length; i++) {
+				assertEquals(expected.get(i).intValue(), matches[i]);
+			}
+			// whitespace is disregarded
+			assertTrue(Arrays.equals(matches, index.lookup(Format.plain().keycode(probe).getLastRow())));
+		}
+		// a valid last row that matches no key
+		byte[] key = new byte[32];
+		key[30] = 100;
+		assertEquals(0, index.lookup(Format.plain().lastRow(key, (byte) 0)).length);
+		assertEquals(0, LastRowIndex.of(new ArrayList<Keycode>()).lookup(Format.plain().lastRow(key, (byte) 0)).length);
+	}
+
+	public void testBatch() {
+		Random r = new Random(0L);
+		KeycodeBatch batch = Format.plain().batch(100);
+		byte[] key = new byte[32];
+		for (int i = 0; i < batch.size(); i++) {
+			r.nextBytes(key);
+			batch.setKey(i, key, (byte) r.nextInt(128));
+		}
+		char[] chars = batch.encode();
+		// invalidate the first entry
+		chars[0] = chars[0] == '1' ? '2' : '1';
+		assertEquals(99, batch.decode(chars, 0));
+		LastRowIndex index = LastRowIndex.of(batch);
+		assertEquals(99, index.size());
+		assertEquals(0, index.lookup(Format.plain().lastRow(batch.getKey(0), batch.getTag(0))).length);
+		for (int i = 1; i < batch.size(); i++) {
+			int[] matches = index.lookup(batch.keycode(i).getLastRow());
+			assertTrue(Arrays.binarySearch(matches, i) >= 0);
+		}
+	}
+
+	public void testInvalid() {
+		LastRowIndex index = LastRowIndex.of(new ArrayList<Keycode>());
+		String lastRow = Format.standard().lastRow(new byte[32], (byte) 0);
+		String[] invalid = {
+				"",
+				lastRow.substring(1),
+				lastRow + "1",
+				lastRow.substring(0, lastRow.length() - 1) + (lastRow.endsWith("1") ? '2' : '1'),
+				"0" + lastRow.substring(1),
+				"A" + lastRow.substring(1),
+		};
+		for (String str : invalid) {
+			try {
+				index.lookup(str);
+				fail(str);
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+		// failures are described as they are for whole codes
+		try {
+			index.lookup(invalid[3]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("invalid last row: invalid checksum for last row", e.getMessage());
+		}
+		try {
+			index.lookup(invalid[4]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("invalid last row: invalid zero at character 1", e.getMessage());
+		}
+	}
+
+}
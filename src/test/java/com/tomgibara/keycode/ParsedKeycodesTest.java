@@ -0,0 +1,114 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class ParsedKeycodesTest extends TestCase {
+
+	public void testParseAll() {
+		Random r = new Random(0L);
+		int count = 5000;
+		List<byte[]> keys = new ArrayList<byte[]>();
+		for (int i = 0; i < count; i++) {
+			byte[] key = new byte[32];
+			r.nextBytes(key);
+			keys.add(key);
+		}
+		List<Keycode> keycodes = Format.standard().encodeAll(keys);
+		assertEquals(count, keycodes.size());
+		StringBuilder sb = new StringBuilder();
+		List<String> codes = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			Keycode keycode = keycodes.get(i);
+			assertEquals(Format.standard().keycode(keys.get(i)), keycode);
+			String code = keycode.toString();
+			// corrupt some codes
+			if (i % 100 == 7) code = code.replace('A', 'O');
+			codes.add(code);
+			sb.append(code).append("\n\n");
+		}
+
+		ParsedKeycodes fromChars = Format.standard().parseAll(sb);
+		ParsedKeycodes fromList = Format.standard().parseAll(codes);
+		for (ParsedKeycodes parsed : Arrays.asList(fromChars, fromList)) {
+			assertEquals(count, parsed.size());
+			int valid = 0;
+			for (int i = 0; i < count; i++) {
+				String code = codes.get(i);
+				try {
+					assertEquals(Format.standard().parse(code), parsed.get(i));
+					assertTrue(parsed.isValid(i));
+					assertNull(parsed.getFailure(i));
+					valid++;
+				} catch (IllegalArgumentException e) {
+					assertFalse(parsed.isValid(i));
+					assertNull(parsed.get(i));
+					assertEquals(e.getMessage(), parsed.getFailure(i));
+				}
+			}
+			assertEquals(valid, parsed.validCount());
+			assertEquals(valid, parsed.getKeycodes().size());
+			SortedMap<Integer, String> failures = parsed.getFailures();
+			assertEquals(count - valid, failures.size());
+			for (Integer index : failures.keySet()) {
+				assertEquals(7, index % 100);
+			}
+		}
+	}
+
+	public void testBoundaries() {
+		Keycode keycode = Format.plain().keycode(new byte[32]);
+		String code = keycode.toString();
+		// a partial trailing code is reported
+		ParsedKeycodes parsed = Format.plain().parseAll("  " + code + code + " " + code.substring(0, 20) + "\n");
+		assertEquals(3, parsed.size());
+		assertEquals(keycode, parsed.get(0));
+		assertEquals(keycode, parsed.get(1));
+		assertEquals("short code: 20 characters", parsed.getFailure(2));
+		assertEquals(0, Format.plain().parseAll(" \n ").size());
+	}
+
+	public void testNested() throws Exception {
+		final String code = Format.plain().keycode(new byte[32]).toString();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			ParsedKeycodes parsed = pool.submit(new Callable<ParsedKeycodes>() {
+				@Override
+				public ParsedKeycodes call() {
+					StringBuilder sb = new StringBuilder();
+					for (int i = 0; i < 1000; i++) sb.append(code);
+					return Format.plain().parseAll(sb);
+				}
+			}).get();
+			assertEquals(1000, parsed.validCount());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class RecoveryTest extends TestCase {
+
+	private static final String ALPHABET = new String(Encoder.CHARS_32);
+
+	private static String blank(String code, int... positions) {
+		char[] chars = code.toCharArray();
+		for (int position : positions) {
+			chars[position] = '?';
+		}
+		return new String(chars);
+	}
+
+	// enumerates every substitution for the unknowns of a pattern
+	private static void bruteForce(char[] chars, int i, Set<String> matches) {
+		if (i == chars.length) {
+			String code = new String(chars);
+			if (Format.plain().validate(code) >= 0) matches.add(code);
+			return;
+		}
+		if (chars[i] != '?') {
+			bruteForce(chars, i + 1, matches);
+			return;
+		}
+		for (int j = 0; j < ALPHABET.length(); j++) {
+			chars[i] = ALPHABET.charAt(j);
+			bruteForce(chars, i + 1, matches);
+		}
+		chars[i] = '?';
+	}
+
+	private static Set<String> recovered(String pattern) {
+		Set<String> set = new HashSet<String>();
+		for (Keycode keycode : Format.plain().recover(pattern)) {
+			assertTrue(set.add(keycode.toString()));
+		}
+		return set;
+	}
+
+	public void testMatchesBruteForce() {
+		Random r = new Random(0L);
+		byte[] key = new byte[32];
+		int[][] blanks = { {}, { 3 }, { 9, 13 }, { 0, 27 }, { 55, 60 }, { 54, 62 }, { 8, 56, 61 }, { 40, 41 } };
+		for (int test = 0; test < 40; test++) {
+			r.nextBytes(key);
+			String code = Format.plain().keycode(key, (byte) r.nextInt(128)).toString();
+			String pattern = blank(code, blanks[test % blanks.length]);
+			Set<String> expected = new HashSet<String>();
+			bruteForce(pattern.toCharArray(), 0, expected);
+			assertTrue(expected.contains(code));
+			assertEquals(pattern, expected, recovered(pattern));
+		}
+	}
+
+	public void testUnknownInEveryRow() {
+		Keycode keycode = Format.standard().keycode(new byte[] {
+				1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+				17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32,
+		}, (byte) 5);
+		String plain = blank(Format.plain().keycode(keycode).toString(), 1, 12, 23, 34, 42, 50, 58);
+		// whitespace in the pattern is ignored
+		StringBuilder pattern = new StringBuilder();
+		for (int i = 0; i < 63; i += 3) {
+			pattern.append(plain, i, i + 3).append(i % 9 == 6 ? '\n' : ' ');
+		}
+		List<Keycode> matches = Format.standard().recover(pattern);
+		assertEquals(1, matches.size());
+		assertEquals(keycode, matches.get(0));
+	}
+
+	public void testLimit() {
+		String code = Format.plain().keycode(new byte[32]).toString();
+		String pattern = blank(code, 18, 19, 20);
+		List<Keycode> all = Format.plain().recover(pattern);
+		assertEquals(1024, all.size());
+		assertEquals(all.subList(0, 10), Format.plain().recover(pattern, 10));
+		assertTrue(Format.plain().recover(pattern, 0).isEmpty());
+		// the number of matches is not limited by the size of any row
+		assertEquals(5, Format.plain().recover(blank(code, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 5).size());
+		// nor are the last rows enumerated beyond the limit
+		List<Keycode> last = Format.plain().recover(blank(code, 54, 55, 56, 57, 58, 59, 60, 61, 62), 3);
+		assertEquals(3, last.size());
+		for (Keycode keycode : last) {
+			assertEquals(code.substring(0, 54), keycode.toString().substring(0, 54));
+		}
+	}
+
+	public void testTooManyMatches() {
+		String code = Format.plain().keycode(new byte[32]).toString();
+		// 2^30 matches are rejected rather than listed
+		String pattern = blank(code, 0, 1, 2, 9, 10, 11, 18, 19, 20);
+		try {
+			Format.plain().recover(pattern);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		// but can be limited
+		assertEquals(100, Format.plain().recover(pattern, 100).size());
+		// matches spanning several blocks are listed in order
+		pattern = blank(code, 9, 10, 18, 19, 20);
+		List<Keycode> all = Format.plain().recover(pattern);
+		assertEquals(32768, all.size());
+		assertEquals(all.subList(0, 20000), Format.plain().recover(pattern, 20000));
+		assertEquals(32768, new HashSet<>(all).size());
+	}
+
+	public void testInvalidPatterns() {
+		String code = Format.plain().keycode(new byte[32]).toString();
+		String[] invalid = { code.substring(1), code + "?", "O" + code.substring(1), code.substring(0, 60) + "A??" };
+		for (String pattern : invalid) {
+			try {
+				Format.plain().recover(pattern);
+				fail(pattern);
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+		// a pattern without unknowns recovers only itself, if valid
+		assertEquals(1, Format.plain().recover(code).size());
+		assertTrue(Format.plain().recover(code.substring(0, 62) + (code.charAt(62) == '1' ? '2' : '1')).isEmpty());
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TAQG10Test extends TestCase {
+
+	// the original quasigroup, applied one digit at a time
+	private static final int[] TABLE = {
+		0, 3, 1, 7, 5, 9, 8, 6, 4, 2,
+		7, 0, 9, 2, 1, 5, 4, 8, 6, 3,
+		4, 2, 0, 6, 8, 7, 1, 3, 5, 9,
+		1, 7, 5, 0, 9, 8, 3, 4, 2, 6,
+		6, 1, 2, 3, 0, 4, 5, 9, 7, 8,
+		3, 6, 7, 4, 2, 0, 9, 5, 8, 1,
+		5, 8, 6, 9, 7, 2, 0, 1, 3, 4,
+		8, 9, 4, 5, 3, 6, 2, 0, 1, 7,
+		9, 4, 3, 8, 6, 1, 7, 2, 0, 5,
+		2, 5, 8, 1, 4, 3, 6, 7, 9, 0
+	};
+
+	private static int reference(CharSequence cs) {
+		int x = 0;
+		for (int i = 0; i < cs.length(); i++) {
+			x = TABLE[x * 10 + cs.charAt(i) - 48];
+		}
+		return x;
+	}
+
+	public void testAllShortSequences() {
+		for (int length = 1; length <= 6; length++) {
+			int limit = (int) Math.pow(10, length);
+			for (int n = 0; n < limit; n++) {
+				check(String.format("%0" + length + "d", n));
+			}
+		}
+	}
+
+	public void testRandomRows() {
+		Random r = new Random(0L);
+		for (int test = 0; test < 100000; test++) {
+			StringBuilder sb = new StringBuilder(9);
+			for (int i = 0; i < 9; i++) {
+				sb.append((char) ('0' + r.nextInt(10)));
+			}
+			check(sb.toString());
+			check(sb.substring(0, 8));
+			int t1 = Integer.parseInt(sb.substring(0, 3));
+			int t2 = Integer.parseInt(sb.substring(3, 6));
+			int p = Integer.parseInt(sb.substring(6, 8));
+			assertEquals((char) (48 + reference(sb.substring(0, 8))), TAQG10.compute(t1, t2, p));
+		}
+	}
+
+	private void check(String str) {
+		int x = reference(str);
+		char[] cs = str.toCharArray();
+		assertEquals((char) (48 + x), TAQG10.compute(cs, 0, cs.length));
+		assertEquals(x == 0, TAQG10.verify(cs, 0, cs.length));
+	}
+
+}
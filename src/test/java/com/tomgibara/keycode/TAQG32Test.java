@@ -16,6 +16,9 @@
  */
 package com.tomgibara.keycode;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 public class TAQG32Test extends TestCase {
@@ -41,5 +44,37 @@ public class TAQG32Test extends TestCase {
 		}
 		System.out.println("DONE");
 	}
-	
+
+	public void testTablesMatchArithmetic() {
+		// every single character substituted into every position of a row
+		char[] row = new char[9];
+		for (int i = 0; i < 9; i++) {
+			for (int v = 0; v < 32; v++) {
+				Arrays.fill(row, '0');
+				row[i] = Encoder.CHARS_32[v];
+				checkRow(row);
+			}
+		}
+		// random rows of varying lengths
+		Random r = new Random(0L);
+		for (int test = 0; test < 100000; test++) {
+			for (int i = 0; i < 9; i++) {
+				row[i] = Encoder.CHARS_32[r.nextInt(32)];
+			}
+			checkRow(row);
+		}
+	}
+
+	private void checkRow(char[] row) {
+		for (int length = 1; length <= 9; length++) {
+			int x = 0;
+			for (int i = 0; i < length; i++) {
+				x = TAQG32.op(x, Encoder.VALUES_32[row[i]]);
+			}
+			char expected = Encoder.CHARS_32[TAQG32.opInv(x, 0)];
+			assertEquals(expected, TAQG32.compute(row, 0, length));
+			assertEquals(x == 0, TAQG32.verify(row, 0, length));
+		}
+	}
+
 }
@@ -0,0 +1,115 @@
+/*
+ *   Copyright 2014 Tom Gibara
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+package com.tomgibara.keycode.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.tomgibara.keycode.Keycode.Format;
+
+import junit.framework.TestCase;
+
+public class KeycodeToolTest extends TestCase {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	private static File write(String content) throws IOException {
+		File file = File.createTempFile("keycode", ".txt");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(content.getBytes(ASCII));
+		}
+		return file;
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), ASCII);
+	}
+
+	public void testRoundTrip() throws IOException {
+		Random r = new Random(0L);
+		int count = 50000;
+		StringBuilder keys = new StringBuilder();
+		StringBuilder codes = new StringBuilder();
+		byte[] key = new byte[32];
+		for (int i = 0; i < count; i++) {
+			r.nextBytes(key);
+			int tag = i % 3 == 0 ? r.nextInt(128) : 0;
+			keys.append(hex(key));
+			if (tag != 0) keys.append(' ').append(tag);
+			keys.append('\n');
+			codes.append(Format.plain().keycode(key, (byte) tag)).append('\n');
+		}
+		File input = write(keys.toString());
+		File encoded = File.createTempFile("keycode", ".txt");
+		encoded.deleteOnExit();
+		File decoded = File.createTempFile("keycode", ".txt");
+		decoded.deleteOnExit();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		// small chunks and several workers check that output is ordered
+		String[] args = { "encode", "-w", "4", "-c", "1", input.getPath(), encoded.getPath() };
+		assertEquals(0, KeycodeTool.run(args, System.out, new PrintStream(err)));
+		assertEquals(codes.toString(), read(encoded));
+		assertTrue(err.toString().startsWith("encode: " + count + " lines, 0 errors"));
+
+		args = new String[] { "decode", "-w", "3", "-c", "1", encoded.getPath(), decoded.getPath() };
+		assertEquals(0, KeycodeTool.run(args, System.out, new PrintStream(err)));
+		assertEquals(keys.toString(), read(decoded));
+	}
+
+	public void testErrors() throws IOException {
+		byte[] key = new byte[32];
+		new Random(1L).nextBytes(key);
+		String code = Format.plain().keycode(key).toString();
+		String bad = code.substring(0, 5) + 'A' + code.substring(6);
+		if (bad.equals(code)) bad = code.substring(0, 5) + 'B' + code.substring(6);
+		File input = write(code + "\r\n" + bad + "\n\n" + Format.standard().keycode(key).toString().replace('\n', ' '));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(1, KeycodeTool.run(new String[] { "decode", input.getPath() }, out, new PrintStream(err)));
+		String hex = hex(key);
+		assertEquals(hex + "\n\n\n" + hex + "\n", out.toString());
+		String report = err.toString();
+		assertTrue(report.contains("line 2: invalid checksum for row 1"));
+		assertTrue(report.contains("line 3: blank line"));
+		assertTrue(report.contains("decode: 4 lines, 2 errors"));
+
+		out.reset();
+		assertEquals(1, KeycodeTool.run(new String[] { "verify", input.getPath() }, out, new PrintStream(err)));
+		assertEquals(0, out.size());
+
+		assertEquals(2, KeycodeTool.run(new String[] { "unknown", input.getPath() }, out, new PrintStream(err)));
+		assertEquals(2, KeycodeTool.run(new String[] { "decode" }, out, new PrintStream(err)));
+		assertEquals(2, KeycodeTool.run(new String[] { "decode", new File(input.getPath() + ".missing").getPath() }, out, new PrintStream(err)));
+	}
+
+}